@@ -1,6 +1,7 @@
 package unics.oknet
 
 import android.app.Application
+import okhttp3.Cache
 import okhttp3.OkHttpClient
 import okhttp3.logging.HttpLoggingInterceptor
 import okhttp3.logging.LoggingEventListener
@@ -9,10 +10,19 @@ import retrofit2.Retrofit
 import retrofit2.converter.gson.GsonConverterFactory
 import retrofit2.converter.moshi.MoshiConverterFactory
 import unics.oknet.OkNet.setup
+import unics.oknet.okhttp.CachePolicy
 import unics.oknet.okhttp.OkDomain
 import unics.oknet.okhttp.OnConflictStrategy
+import unics.oknet.okhttp.PreconnectListener
+import unics.oknet.okhttp.Preconnector
+import unics.oknet.okhttp.SingleFlightInterceptor
 import unics.oknet.request.ProgressInterceptor
+import unics.oknet.request.WireProgressInterceptor
+import unics.oknet.retrofit.MemoryCache
+import unics.oknet.retrofit.MemoryCacheCallAdapterFactory
+import java.io.File
 import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
 
 /**
  * 简易的网络api请求客户端；也可以单独使用[OkDomain]的功能
@@ -21,7 +31,8 @@ import java.util.concurrent.TimeUnit
 object OkNet {
 
     /**
-     * 延迟初始化
+     * 延迟初始化：在首次使用OkNet时执行；开启了连接预热（[setPreconnect]）时会在`OkNet-Preconnect`后台线程中提前执行，
+     * 因此[onSetup]和[onConfigured]可能在后台线程中调用
      */
     interface LazyInitializer {
 
@@ -32,6 +43,12 @@ object OkNet {
          */
         val baseUrl: String
 
+        /**
+         * HTTP磁盘缓存大小（字节），缓存目录为`cacheDir/oknet_http`；小于等于0表示不使用缓存（默认）
+         * @see setCachePolicy
+         */
+        val httpCacheSize: Long get() = 0
+
         /**
          * 配置：用于配置用户的自定义配置
          * 注意：不用再调用[addOkDomain]放，内部已经调用了这个方法
@@ -48,9 +65,21 @@ object OkNet {
     private lateinit var mOkHttpClient: OkHttpClient
     private lateinit var mRetrofit: Retrofit
     private val mApiServiceCaches = mutableMapOf<Class<*>, Any>()
+    //懒加载可能在预热线程中执行，需要保证其他线程看到初始化完成时也能看到初始化的结果
+    @Volatile
     private var mInit: Boolean = false
+    @Volatile
     private var mLazyInitializer: LazyInitializer? = null
     private lateinit var mApp: Application
+    //域名和全局header在拦截器中修改，不在内存缓存的键中，修改时清空缓存
+    private val mMemoryCache = MemoryCacheCallAdapterFactory()
+    private val mSingleFlight = SingleFlightInterceptor().apply { enable = false }
+
+    @Volatile
+    private var mPreconnect: Boolean = false
+
+    @Volatile
+    private var mPreconnectListener: PreconnectListener? = null
 
     internal var DEBUG = OkDomain.debuggable
 
@@ -59,8 +88,8 @@ object OkNet {
         get() {
             if (mInit)
                 return mApp
-            //如果没有初始化，则使用的是懒加载
-            return mLazyInitializer!!.app
+            //如果没有初始化，则使用的是懒加载；懒加载可能刚好在其他线程中完成
+            return mLazyInitializer?.app ?: mApp
         }
 
     /**
@@ -90,6 +119,7 @@ object OkNet {
      * @param readTimeoutMsec 读取超时，默认30000
      * @param retryOnConnectionFailure  连接失败是否重连，默认true
      * @param converterFactory 用于retrofit配置的json工厂
+     * @param httpCacheSize HTTP磁盘缓存大小（字节），小于等于0表示不使用缓存（默认），见[LazyInitializer.httpCacheSize]
      * @param mainHeaders 主域名配置的全局header，后续可以修改；[Triple.first]-对应header的key，[Triple.second]-对应header的value，[Triple.third]-对应header冲突处理策略
      */
     @JvmStatic
@@ -101,6 +131,7 @@ object OkNet {
         readTimeoutMsec: Long = 30 * 1000,
         retryOnConnectionFailure: Boolean = true,
         converterFactory: Converter.Factory? = quicklyPreferredConverterFactory(),
+        httpCacheSize: Long = 0,
         vararg mainHeaders: Triple<String, String, OnConflictStrategy>
     ) {
         setup(
@@ -112,6 +143,7 @@ object OkNet {
                 readTimeoutMsec,
                 retryOnConnectionFailure,
                 converterFactory,
+                httpCacheSize,
                 *mainHeaders
             )
         )
@@ -126,6 +158,8 @@ object OkNet {
             "OkNetClient has already been configured and cannot be configured repeatedly"
         }
         mLazyInitializer = lazyInitializer
+        if (mPreconnect)
+            initForPreconnect()
     }
 
     @JvmOverloads
@@ -135,7 +169,20 @@ object OkNet {
         baseUrl: String,
         initializer: (OkHttpClient.Builder, Retrofit.Builder) -> Unit = { obuilder, rbuilder -> }
     ) {
-        performSetup(app, baseUrl, initializer)
+        performSetup(app, baseUrl, 0, initializer)
+    }
+
+    /**
+     * @param httpCacheSize HTTP磁盘缓存大小（字节），小于等于0表示不使用缓存，见[LazyInitializer.httpCacheSize]
+     */
+    @JvmStatic
+    fun setup(
+        app: Application,
+        baseUrl: String,
+        httpCacheSize: Long,
+        initializer: (OkHttpClient.Builder, Retrofit.Builder) -> Unit
+    ) {
+        performSetup(app, baseUrl, httpCacheSize, initializer)
     }
 
     /**
@@ -151,7 +198,12 @@ object OkNet {
             }
             val lazyInitializer =
                 mLazyInitializer ?: throw RuntimeException("please call setup method first.")
-            performSetup(lazyInitializer.app, lazyInitializer.baseUrl, lazyInitializer::onSetup)
+            performSetup(
+                lazyInitializer.app,
+                lazyInitializer.baseUrl,
+                lazyInitializer.httpCacheSize,
+                lazyInitializer::onSetup
+            )
             lazyInitializer.onConfigured()
             mLazyInitializer = null
         }
@@ -160,6 +212,7 @@ object OkNet {
     private fun performSetup(
         app: Application,
         baseUrl: String,
+        httpCacheSize: Long,
         initializer: (OkHttpClient.Builder, Retrofit.Builder) -> Unit
     ) {
         synchronized(this) {
@@ -173,12 +226,35 @@ object OkNet {
             val oBuilder = OkHttpClient.Builder()
                 .addOkDomain(baseUrl)
                 .addInterceptor(ProgressInterceptor())
+                .addNetworkInterceptor(WireProgressInterceptor())
+            if (httpCacheSize > 0)
+                oBuilder.cache(Cache(File(app.cacheDir, "oknet_http"), httpCacheSize))
             val rBuilder = Retrofit.Builder()
+                .addCallAdapterFactory(mMemoryCache)
             rBuilder.baseUrl(baseUrl)
             initializer.invoke(oBuilder, rBuilder)
+            //放在自定义拦截器之后，以添加了全局header、鉴权header等之后的最终请求判断是否相同
+            oBuilder.addInterceptor(mSingleFlight)
             mOkHttpClient = oBuilder.build()
+            OkDomain.attachClient(mOkHttpClient)
             mRetrofit = rBuilder.client(mOkHttpClient).build()
             mInit = true
+            if (mPreconnect)
+                Preconnector.preconnect(mOkHttpClient, OkDomain.baseUrls(), mPreconnectListener)
+        }
+    }
+
+    /**
+     * 开启了连接预热时，在后台线程执行懒加载，使预热在首次请求之前进行，而不是与首次请求同时发生
+     */
+    private fun initForPreconnect() {
+        thread(isDaemon = true, name = "OkNet-Preconnect") {
+            try {
+                requirePerformLazyInit()
+            } catch (e: Throwable) {
+                //初始化失败时由首次使用时再次初始化并抛出异常
+                logd { "[OkNet] init for preconnect failed:$e" }
+            }
         }
     }
 
@@ -211,6 +287,7 @@ object OkNet {
         readTimeoutMsec: Long = 15 * 1000,
         retryOnConnectionFailure: Boolean = true,
         converterFactory: Converter.Factory? = quicklyPreferredConverterFactory(),
+        httpCacheSize: Long = 0,
         vararg mainHeaders: Triple<String, String, OnConflictStrategy>
     ): LazyInitializer {
 
@@ -220,6 +297,8 @@ object OkNet {
 
             override val baseUrl: String = baseUrl
 
+            override val httpCacheSize: Long = httpCacheSize
+
             override fun onSetup(oBuilder: OkHttpClient.Builder, rBuilder: Retrofit.Builder) {
                 setDebug(debug)
                 oBuilder.connectTimeout(connectTimeoutMsec, TimeUnit.MILLISECONDS)
@@ -256,6 +335,9 @@ object OkNet {
     fun setMainDomain(url: String) {
         requirePerformLazyInit()
         OkDomain.setMainDomain(url)
+        mMemoryCache.clear()
+        if (mPreconnect)
+            Preconnector.preconnect(mOkHttpClient, url, mPreconnectListener)
     }
 
     /**
@@ -269,6 +351,9 @@ object OkNet {
     fun setDomain(name: String, url: String) {
         requirePerformLazyInit()
         OkDomain.setDomain(name, url)
+        mMemoryCache.clear()
+        if (mPreconnect)
+            Preconnector.preconnect(mOkHttpClient, url, mPreconnectListener)
     }
 
     /**
@@ -285,6 +370,7 @@ object OkNet {
     ) {
         requirePerformLazyInit()
         OkDomain.addMainHeader(key, value, conflictStrategy)
+        mMemoryCache.clear()
     }
 
     /**
@@ -295,7 +381,9 @@ object OkNet {
     @JvmStatic
     fun removeMainHeader(key: String): Pair<String, OnConflictStrategy>? {
         requirePerformLazyInit()
-        return OkDomain.removeMainHeader(key)
+        return OkDomain.removeMainHeader(key).also {
+            mMemoryCache.clear()
+        }
     }
 
     @JvmStatic
@@ -308,12 +396,94 @@ object OkNet {
     ) {
         requirePerformLazyInit()
         OkDomain.addHeader(domainName, key, value, conflictStrategy)
+        mMemoryCache.clear()
     }
 
     @JvmStatic
     fun removeHeader(domainName: String, key: String): Pair<String, OnConflictStrategy>? {
         requirePerformLazyInit()
-        return OkDomain.removeHeader(domainName, key)
+        return OkDomain.removeHeader(domainName, key).also {
+            mMemoryCache.clear()
+        }
+    }
+
+    /**
+     * 设置主域名请求体的gzip压缩
+     * @see OkDomain.setRequestGzip
+     */
+    @JvmStatic
+    fun setMainRequestGzip(minLength: Long) {
+        requirePerformLazyInit()
+        OkDomain.setMainRequestGzip(minLength)
+    }
+
+    /**
+     * 设置域名为[domainName]的请求体gzip压缩
+     * @param minLength 请求体的最小压缩长度（字节），小于0表示不压缩
+     * @see OkDomain.setRequestGzip
+     */
+    @JvmStatic
+    fun setRequestGzip(domainName: String, minLength: Long) {
+        requirePerformLazyInit()
+        OkDomain.setRequestGzip(domainName, minLength)
+    }
+
+    /**
+     * 设置主域名的缓存策略
+     * @see OkDomain.setCachePolicy
+     */
+    @JvmStatic
+    fun setMainCachePolicy(policy: CachePolicy?) {
+        requirePerformLazyInit()
+        OkDomain.setMainCachePolicy(policy)
+    }
+
+    /**
+     * 设置域名为[domainName]的HTTP缓存策略，需要配置[LazyInitializer.httpCacheSize]或者自行配置[Cache]
+     * @see OkDomain.setCachePolicy
+     */
+    @JvmStatic
+    fun setCachePolicy(domainName: String, policy: CachePolicy?) {
+        requirePerformLazyInit()
+        OkDomain.setCachePolicy(domainName, policy)
+    }
+
+    /**
+     * 设置是否预热连接：开启后在初始化完成后、以及通过[setMainDomain]/[setDomain]修改域名后，
+     * 在后台向域名的地址发送HEAD请求，提前建立连接（DNS、TCP、TLS）并放入连接池，减少首次请求的耗时；默认关闭。
+     * 使用懒加载时，开启预热会在后台线程提前执行初始化并预热，不必等到首次请求；初始化后开启时立即预热所有域名。
+     * 预热请求不经过拦截器，不会携带全局header和鉴权信息
+     * @param listener 预热结果的监听，可以用于确认连接使用的协议（比如HTTP/2），在OkHttp的线程中回调
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun setPreconnect(enable: Boolean, listener: PreconnectListener? = null) {
+        mPreconnectListener = listener
+        mPreconnect = enable
+        if (!enable)
+            return
+        if (mInit)
+            Preconnector.preconnect(mOkHttpClient, OkDomain.baseUrls(), listener)
+        else if (mLazyInitializer != null)
+            initForPreconnect()
+    }
+
+    /**
+     * 设置是否合并相同的请求：相同的GET/HEAD请求正在进行时，后续的请求等待其完成并获得响应的副本，默认关闭。
+     * 合并拦截器添加在初始化时配置的拦截器之后，按添加了鉴权等header后的最终请求判断是否相同，不同用户的请求不会合并
+     * @see SingleFlightInterceptor
+     */
+    @JvmStatic
+    fun setRequestCoalescing(enable: Boolean) {
+        mSingleFlight.enable = enable
+    }
+
+    /**
+     * 清空使用[MemoryCache]注解的接口的内存缓存
+     */
+    @JvmStatic
+    fun clearMemoryCache() {
+        mMemoryCache.clear()
     }
 
     /**
@@ -0,0 +1,200 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unics.oknet.okhttp
+
+import okhttp3.CacheControl
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okio.Okio
+import retrofit2.Invocation
+import retrofit2.http.Streaming
+import unics.oknet.logd
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * 域名的HTTP缓存策略，通过[OkDomain.setCachePolicy]为域名设置，只对GET请求生效；
+ * 需要为OkHttpClient配置[okhttp3.Cache]（比如[unics.oknet.OkNet.LazyInitializer.httpCacheSize]），
+ * 使用[Streaming]注解的请求不做处理，已经包含Cache-Control请求头的请求不使用过期缓存
+ *
+ * @param maxAgeSeconds 强制的缓存有效期（秒）：忽略服务端的缓存响应头，成功的响应都缓存[maxAgeSeconds]秒；小于0表示使用服务端的缓存响应头（默认）
+ * @param staleWhileRevalidateSeconds 缓存过期后[staleWhileRevalidateSeconds]秒内仍直接返回过期的缓存，同时在后台重新请求更新缓存；0表示不启用
+ * @param staleIfErrorSeconds 网络请求失败（IO异常或者5xx）时，使用过期不超过[staleIfErrorSeconds]秒的缓存；0表示不启用
+ */
+class CachePolicy @JvmOverloads constructor(
+    @JvmField val maxAgeSeconds: Int = -1,
+    @JvmField val staleWhileRevalidateSeconds: Int = 0,
+    @JvmField val staleIfErrorSeconds: Int = 0
+) {
+
+    init {
+        require(staleWhileRevalidateSeconds >= 0 && staleIfErrorSeconds >= 0) {
+            "staleWhileRevalidateSeconds and staleIfErrorSeconds must not be negative."
+        }
+    }
+
+    override fun toString(): String {
+        return "CachePolicy(maxAge=$maxAgeSeconds, staleWhileRevalidate=$staleWhileRevalidateSeconds, staleIfError=$staleIfErrorSeconds)"
+    }
+
+    /**
+     * 应用层拦截器：处理过期缓存的使用（stale-while-revalidate、stale-if-error）
+     */
+    internal class AppInterceptor : Interceptor {
+
+        /**
+         * 后台更新缓存使用的客户端，为空时不启用stale-while-revalidate；每个[OkHttpClient.Builder]使用各自的实例，
+         * 由[OkDomain.attachClient]设置为包含该拦截器的客户端
+         */
+        @Volatile
+        var client: OkHttpClient? = null
+
+        //正在后台更新的请求，避免重复更新；ConcurrentHashMap.newKeySet需要API 24
+        private val revalidating: MutableSet<String> = Collections.newSetFromMap(ConcurrentHashMap<String, Boolean>())
+
+        override fun intercept(chain: Interceptor.Chain): Response {
+            val request = chain.request()
+            val policy = request.policy()
+            //已经包含Cache-Control请求头的请求由调用方控制缓存
+            if (policy == null || request.header(CACHE_CONTROL) != null)
+                return chain.proceed(request)
+            if (policy.staleWhileRevalidateSeconds > 0) {
+                val client = client
+                val cached = if (client == null) null else proceedCacheOnly(chain, request, policy.staleWhileRevalidateSeconds)
+                if (cached != null) {
+                    if (isStale(cached))
+                        revalidate(client!!, request, policy)
+                    return cached
+                }
+            }
+            if (policy.staleIfErrorSeconds <= 0)
+                return chain.proceed(request)
+            val response = try {
+                chain.proceed(request)
+            } catch (e: IOException) {
+                logd { "[CachePolicy] request ${request.url()} failed,try stale cache." }
+                return proceedCacheOnly(chain, request, policy.staleIfErrorSeconds) ?: throw e
+            }
+            if (response.code() !in 500..504)
+                return response
+            val cached = proceedCacheOnly(chain, request, policy.staleIfErrorSeconds) ?: return response
+            logd { "[CachePolicy] request ${request.url()} failed with ${response.code()},use stale cache." }
+            response.close()
+            return cached
+        }
+
+        /**
+         * 只读取缓存
+         * @return 没有可用的缓存时返回null
+         */
+        private fun proceedCacheOnly(chain: Interceptor.Chain, request: Request, maxStaleSeconds: Int): Response? {
+            val cacheControl = CacheControl.Builder()
+                .onlyIfCached()
+                .maxStale(maxStaleSeconds, TimeUnit.SECONDS)
+                .build()
+            val response = chain.proceed(request.newBuilder().cacheControl(cacheControl).build())
+            //only-if-cached没有命中缓存时返回504
+            if (response.code() == 504 && response.cacheResponse() == null) {
+                response.close()
+                return null
+            }
+            return response
+        }
+
+        /**
+         * 缓存已过期：OkHttp为过期的缓存添加"Warning: 110"响应头
+         */
+        private fun isStale(response: Response): Boolean {
+            return response.headers(WARNING).any { it.startsWith("110") }
+        }
+
+        /**
+         * 后台重新请求，响应写入缓存
+         */
+        private fun revalidate(client: OkHttpClient, request: Request, policy: CachePolicy) {
+            val key = request.url().toString()
+            if (!revalidating.add(key))
+                return
+            logd { "[CachePolicy] serve stale cache and revalidate $key in background." }
+            //显式的Cache-Control请求头使后台请求不会再次读取缓存，保留缓存策略用于强制缓存有效期；不保留进度回调等其他tag
+            val networkRequest = Request.Builder()
+                .url(request.url())
+                .headers(request.headers())
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .tag(CachePolicy::class.java, policy)
+                .build()
+            client.newCall(networkRequest).enqueue(object : Callback {
+                override fun onFailure(call: Call, e: IOException) {
+                    revalidating.remove(key)
+                }
+
+                override fun onResponse(call: Call, response: Response) {
+                    try {
+                        //读取完整的响应体后才会写入缓存
+                        response.body()?.source()?.readAll(Okio.blackhole())
+                    } finally {
+                        response.close()
+                        revalidating.remove(key)
+                    }
+                }
+            })
+        }
+    }
+
+    /**
+     * 网络层拦截器：强制缓存有效期
+     */
+    internal class NetworkInterceptor : Interceptor {
+
+        override fun intercept(chain: Interceptor.Chain): Response {
+            val request = chain.request()
+            val response = chain.proceed(request)
+            val policy = request.policy()
+            if (policy == null || policy.maxAgeSeconds < 0 || !response.isSuccessful)
+                return response
+            return response.newBuilder()
+                .removeHeader(PRAGMA)
+                .header(CACHE_CONTROL, "public, max-age=${policy.maxAgeSeconds}")
+                .build()
+        }
+    }
+
+    private companion object {
+        const val CACHE_CONTROL = "Cache-Control"
+        const val PRAGMA = "Pragma"
+        const val WARNING = "Warning"
+
+        /**
+         * 请求使用的缓存策略
+         */
+        fun Request.policy(): CachePolicy? {
+            val policy = tag(CachePolicy::class.java) ?: return null
+            if (method() != "GET")
+                return null
+            val method = tag(Invocation::class.java)?.method()
+            if (method != null && method.isAnnotationPresent(Streaming::class.java))
+                return null
+            return policy
+        }
+    }
+}
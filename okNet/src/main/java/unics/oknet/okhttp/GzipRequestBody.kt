@@ -0,0 +1,76 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unics.oknet.okhttp
+
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okhttp3.Response
+import okio.BufferedSink
+import okio.GzipSink
+import okio.Okio
+
+/**
+ * 边写入边gzip压缩的请求体，压缩后的长度未知，使用分块传输
+ * @see OkDomain.setRequestGzip
+ */
+internal class GzipRequestBody(private val body: RequestBody) : RequestBody() {
+
+    override fun contentType(): MediaType? = body.contentType()
+
+    override fun contentLength(): Long = -1
+
+    override fun writeTo(sink: BufferedSink) {
+        val gzipSink = Okio.buffer(GzipSink(sink))
+        body.writeTo(gzipSink)
+        gzipSink.close()
+    }
+
+    /**
+     * 标记需要压缩请求体的请求，由DomainInterceptor添加
+     */
+    internal object Mark
+
+    /**
+     * 在网络层压缩被标记的请求体：应用层拦截器（包括上传进度统计）看到的仍然是未压缩的请求体，
+     * 因此上传进度按压缩前的字节数统计，总大小为原始请求体的长度
+     */
+    internal class NetworkInterceptor : Interceptor {
+
+        override fun intercept(chain: Interceptor.Chain): Response {
+            val request = chain.request()
+            val body = request.body()
+            if (body == null || request.tag(Mark::class.java) == null || request.header(CONTENT_ENCODING) != null)
+                return chain.proceed(request)
+            //BridgeInterceptor已按原始长度设置了Content-Length，压缩后长度未知，改为分块传输
+            return chain.proceed(
+                request.newBuilder()
+                    .header(CONTENT_ENCODING, "gzip")
+                    .header(TRANSFER_ENCODING, "chunked")
+                    .removeHeader(CONTENT_LENGTH)
+                    .method(request.method(), GzipRequestBody(body))
+                    .build()
+            )
+        }
+    }
+
+    private companion object {
+        const val CONTENT_ENCODING = "Content-Encoding"
+        const val TRANSFER_ENCODING = "Transfer-Encoding"
+        const val CONTENT_LENGTH = "Content-Length"
+    }
+}
@@ -26,8 +26,10 @@ import unics.oknet.okhttp.OkDomain.addMainHeader
 import unics.oknet.okhttp.OkDomain.enable
 import unics.oknet.okhttp.OkDomain.removeHeader
 import unics.oknet.okhttp.OkDomain.removeMainHeader
+import unics.oknet.okhttp.OkDomain.setCachePolicy
 import unics.oknet.okhttp.OkDomain.setDomain
 import unics.oknet.okhttp.OkDomain.setMainDomain
+import unics.oknet.okhttp.OkDomain.setRequestGzip
 import unics.oknet.okhttp.OkDomain.useOkDomain
 
 /**
@@ -45,6 +47,8 @@ import unics.oknet.okhttp.OkDomain.useOkDomain
  * @see removeMainHeader remove the global header of the main domain by the key
  * @see addHeader add the header corresponding to the domain by the key
  * @see removeHeader remove the header corresponding to the domain by the key
+ * @see setRequestGzip gzip the request bodies of the domain
+ * @see setCachePolicy the http cache policy of the domain
  */
 object OkDomain {
 
@@ -79,6 +83,28 @@ object OkDomain {
         builder.addInterceptor(interceptor ?: DomainInterceptor(baseUrl).also {
             domainInterceptor = it
         })
+        //缓存策略由DomainInterceptor标记到请求上；每个builder使用各自的拦截器，后台更新缓存时使用对应的客户端
+        builder.addInterceptor(CachePolicy.AppInterceptor())
+        builder.addNetworkInterceptor(CachePolicy.NetworkInterceptor())
+        //请求体压缩由DomainInterceptor标记到请求上，在网络层压缩
+        builder.addNetworkInterceptor(GzipRequestBody.NetworkInterceptor())
+    }
+
+    /**
+     * 所有域名当前的地址
+     */
+    internal fun baseUrls(): List<String> {
+        return domainInterceptor?.baseUrls().orEmpty()
+    }
+
+    /**
+     * 设置缓存策略在后台更新缓存（stale-while-revalidate）时使用的客户端：[client]使用自身进行后台更新
+     */
+    internal fun attachClient(client: OkHttpClient) {
+        client.interceptors().forEach {
+            if (it is CachePolicy.AppInterceptor)
+                it.client = client
+        }
     }
 
     /**
@@ -151,6 +177,47 @@ object OkDomain {
         return domainInterceptor?.removeHeader(domainName, key)
     }
 
+    /**
+     * 设置主域名请求体的gzip压缩
+     * @see setRequestGzip
+     */
+    @JvmStatic
+    fun setMainRequestGzip(minLength: Long) = setRequestGzip(MAIN_DOMAIN, minLength)
+
+    /**
+     * 设置[domainName]表示的域名的请求体gzip压缩：请求体在发送时边写入边压缩，并添加"Content-Encoding: gzip"请求头，
+     * 已经设置Content-Encoding的请求不做处理；服务端需要支持gzip编码的请求体。
+     * 压缩在网络层进行，上传进度统计的是压缩前的字节数，总大小为原始请求体的长度。
+     * 携带Upload-Offset请求头的请求（比如断点续传的分片）不压缩：服务端按偏移确认接收的字节数，压缩后会与偏移不一致
+     * @param minLength 请求体的最小压缩长度（字节），长度未知的请求体总是压缩；小于0表示不压缩（默认）
+     */
+    @JvmStatic
+    fun setRequestGzip(domainName: String, minLength: Long) {
+        val interceptor = domainInterceptor
+            ?: throw RuntimeException("set domain require call method ${OkDomain::useOkDomain.name} first.")
+        interceptor.setRequestGzip(domainName, minLength)
+    }
+
+    /**
+     * 设置主域名的缓存策略
+     * @see setCachePolicy
+     */
+    @JvmStatic
+    fun setMainCachePolicy(policy: CachePolicy?) = setCachePolicy(MAIN_DOMAIN, policy)
+
+    /**
+     * 设置[domainName]表示的域名的HTTP缓存策略，只对GET请求生效，需要为OkHttpClient配置[okhttp3.Cache]；
+     * stale-while-revalidate需要在OkHttpClient创建后调用[attachClient]（[unics.oknet.OkNet]已自动调用）
+     * @param policy 缓存策略，为空表示使用服务端的缓存响应头（默认）
+     * @see CachePolicy
+     */
+    @JvmStatic
+    fun setCachePolicy(domainName: String, policy: CachePolicy?) {
+        val interceptor = domainInterceptor
+            ?: throw RuntimeException("set domain require call method ${OkDomain::useOkDomain.name} first.")
+        interceptor.setCachePolicy(domainName, policy)
+    }
+
     /**
      * 域名切换以及域名对应的全局Header 拦截器
      * @param baseUrl 主域名，必须设置，后面可以修改，不能为空
@@ -223,6 +290,26 @@ object OkDomain {
             return configs[domainName]?.removeHeader(key)
         }
 
+        fun setRequestGzip(domainName: String, minLength: Long) {
+            val cache = configs[domainName]
+            require(cache != null) {
+                "[DomainInterceptor#setRequestGzip] the domain config named '$domainName' not found,please use call ${::setDomain} method before set gzip."
+            }
+            logd { "[DomainInterceptor#setRequestGzip] set the gzip min length of the domain config named '$domainName' to $minLength" }
+            cache.gzipMinLength = minLength
+        }
+
+        fun baseUrls(): List<String> = configs.values.map { it.expectBaseUrl }.distinct()
+
+        fun setCachePolicy(domainName: String, policy: CachePolicy?) {
+            val cache = configs[domainName]
+            require(cache != null) {
+                "[DomainInterceptor#setCachePolicy] the domain config named '$domainName' not found,please use call ${::setDomain} method before set cache policy."
+            }
+            logd { "[DomainInterceptor#setCachePolicy] set the cache policy of the domain config named '$domainName' to $policy" }
+            cache.cachePolicy = policy
+        }
+
         override fun intercept(chain: Interceptor.Chain): Response {
             logd { "[DomainInterceptor]intercept" }
             return chain.proceed(handleRequest(chain.request()))
@@ -270,7 +357,9 @@ object OkDomain {
          */
         private fun newRequest(baseUrl: String, request: Request, config: DomainConfig): Request {
             val isBaseUrlSame = baseUrl == config.expectBaseUrl
-            if (isBaseUrlSame && config.headers.isEmpty()) {
+            val gzip = shouldGzip(request, config)
+            val cachePolicy = config.cachePolicy
+            if (isBaseUrlSame && config.headers.isEmpty() && !gzip && cachePolicy == null) {
                 logd { "[DomainInterceptor#newRequest] the base url is same with current config,and the global header is empty,use the original request." }
                 return request
             }
@@ -286,9 +375,32 @@ object OkDomain {
             config.headers.forEach { (key, valuePair) ->
                 valuePair.second.apply(originalHeaders, builder, key, valuePair.first)
             }
+            if (gzip) {
+                logd { "[DomainInterceptor#newRequest] mark the request body to be gzipped." }
+                builder.tag(GzipRequestBody.Mark::class.java, GzipRequestBody.Mark)
+            }
+            if (cachePolicy != null)
+                builder.tag(CachePolicy::class.java, cachePolicy)
             return builder.build()
         }
 
+        /**
+         * 是否需要压缩请求体
+         */
+        private fun shouldGzip(request: Request, config: DomainConfig): Boolean {
+            val minLength = config.gzipMinLength
+            if (minLength < 0)
+                return false
+            val body = request.body() ?: return false
+            if (request.header(CONTENT_ENCODING) != null)
+                return false
+            //基于偏移的分片上传
+            if (request.header(UPLOAD_OFFSET) != null)
+                return false
+            val length = body.contentLength()
+            return length < 0 || length >= minLength
+        }
+
         /**
          * 提取BaseUrl
          * find the base url of the [urlValue] from the [domainConfig]
@@ -354,6 +466,18 @@ object OkDomain {
 
         internal val headers = mutableMapOf<String, Pair<String, OnConflictStrategy>>()
 
+        /**
+         * 请求体gzip压缩的最小长度，小于0表示不压缩
+         */
+        @Volatile
+        internal var gzipMinLength: Long = -1
+
+        /**
+         * 缓存策略，为空表示使用服务端的缓存响应头
+         */
+        @Volatile
+        internal var cachePolicy: CachePolicy? = null
+
         val expectBaseUrl: String get() = baseUrl
 
         /**
@@ -388,4 +512,7 @@ object OkDomain {
 
     internal const val MAIN_DOMAIN = "_MAIN_"
 
+    private const val CONTENT_ENCODING = "Content-Encoding"
+    private const val UPLOAD_OFFSET = "Upload-Offset"
+
 }
\ No newline at end of file
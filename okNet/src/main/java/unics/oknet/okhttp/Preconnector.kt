@@ -0,0 +1,98 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package unics.oknet.okhttp
+
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.HttpUrl
+import okhttp3.OkHttpClient
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import unics.oknet.logd
+import java.io.IOException
+
+/**
+ * 连接预热结果的监听
+ */
+interface PreconnectListener {
+
+    /**
+     * 预热完成
+     * @param baseUrl 预热的域名地址
+     * @param protocol 建立的连接使用的协议（比如[Protocol.HTTP_2]），失败时为null
+     * @param error 失败原因，成功时为null
+     */
+    fun onPreconnected(baseUrl: String, protocol: Protocol?, error: IOException?)
+}
+
+/**
+ * 连接预热：在后台向域名的地址发送HEAD请求，提前完成DNS解析、TCP连接和TLS握手，建立的连接放入连接池供后续请求复用；
+ * 预热请求不经过拦截器（域名替换、全局header、鉴权等），只共享连接池和调度器
+ */
+internal object Preconnector {
+
+    fun preconnect(client: OkHttpClient, baseUrls: Collection<String>, listener: PreconnectListener?) {
+        val bareClient = bareClient(client)
+        baseUrls.forEach {
+            preconnectWith(bareClient, it, listener)
+        }
+    }
+
+    fun preconnect(client: OkHttpClient, baseUrl: String, listener: PreconnectListener?) {
+        preconnectWith(bareClient(client), baseUrl, listener)
+    }
+
+    /**
+     * 去掉所有拦截器和缓存的客户端，避免预热请求携带全局header、鉴权信息等
+     */
+    private fun bareClient(client: OkHttpClient): OkHttpClient {
+        return client.newBuilder()
+            .apply {
+                interceptors().clear()
+                networkInterceptors().clear()
+            }
+            .cache(null)
+            .build()
+    }
+
+    private fun preconnectWith(client: OkHttpClient, baseUrl: String, listener: PreconnectListener?) {
+        val url = HttpUrl.parse(baseUrl)
+        if (url == null) {
+            logd { "[Preconnector] ignore the invalid base url $baseUrl" }
+            return
+        }
+        val request = Request.Builder()
+            .url(url)
+            .head()
+            .build()
+        client.newCall(request).enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                logd { "[Preconnector] preconnect $baseUrl failed:$e" }
+                listener?.onPreconnected(baseUrl, null, e)
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                //只需要建立连接，不关心响应内容
+                response.close()
+                logd { "[Preconnector] preconnect $baseUrl success,protocol=${response.protocol()}" }
+                listener?.onPreconnected(baseUrl, response.protocol(), null)
+            }
+        })
+    }
+}
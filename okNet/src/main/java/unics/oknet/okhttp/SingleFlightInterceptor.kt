@@ -0,0 +1,181 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package unics.oknet.okhttp
+
+import okhttp3.Interceptor
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody
+import retrofit2.Invocation
+import retrofit2.http.Streaming
+import unics.oknet.logd
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 相同请求合并拦截器：相同的幂等请求（GET/HEAD，方法、url和请求头都相同）正在进行时，后续的请求不再发起，
+ * 等待正在进行的请求完成后获得其响应的副本；响应体会完整读取到内存中，超过[maxBodySize]时后续请求各自发起。
+ * 使用[Streaming]注解的请求（比如文件下载）不做合并
+ *
+ * 使用方式：在[unics.oknet.OkNet.LazyInitializer.onSetup]中调用`oBuilder.addInterceptor(SingleFlightInterceptor())`，
+ * 使用[unics.oknet.OkNet]时直接调用[unics.oknet.OkNet.setRequestCoalescing]；
+ * 请求头参与判断是否相同，需要添加在鉴权等修改请求头的拦截器之后，否则不同用户的请求可能被合并
+ *
+ * @param maxBodySize 可以共享的最大响应体大小（字节），默认1M
+ */
+class SingleFlightInterceptor @JvmOverloads constructor(
+    private val maxBodySize: Long = 1024 * 1024
+) : Interceptor {
+
+    /**
+     * 是否启用
+     */
+    @Volatile
+    var enable: Boolean = true
+
+    private val flights = ConcurrentHashMap<String, Flight>()
+
+    init {
+        require(maxBodySize >= 0) {
+            "maxBodySize must not be negative."
+        }
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        if (!enable || !isCoalescible(request))
+            return chain.proceed(request)
+        val key = key(request)
+        val flight = Flight()
+        val existing = flights.putIfAbsent(key, flight)
+        if (existing != null) {
+            logd { "[SingleFlightInterceptor] wait for the in-flight request ${request.url()}" }
+            return existing.await(chain) ?: chain.proceed(request)
+        }
+        try {
+            val response = chain.proceed(request)
+            val body = response.body()
+            val bytes = try {
+                body?.let { readBody(it) }
+            } catch (e: IOException) {
+                response.close()
+                throw e
+            }
+            if (body == null || bytes == null) {
+                //响应体太大或者没有响应体时不共享
+                flight.complete(null, null)
+                return response
+            }
+            val shared = response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), bytes))
+                .build()
+            flight.complete(shared, bytes)
+            return shared
+        } catch (e: IOException) {
+            //请求被取消时后续请求各自发起
+            flight.fail(if (chain.call().isCanceled) null else e)
+            throw e
+        } catch (e: RuntimeException) {
+            flight.fail(null)
+            throw e
+        } finally {
+            flights.remove(key, flight)
+        }
+    }
+
+    /**
+     * 读取完整的响应体
+     * @return 超过[maxBodySize]时返回null，此时响应体保持可读
+     */
+    private fun readBody(body: ResponseBody): ByteArray? {
+        val contentLength = body.contentLength()
+        if (contentLength > maxBodySize)
+            return null
+        val source = body.source()
+        if (contentLength < 0 && source.request(maxBodySize + 1))
+            return null
+        return body.use { it.bytes() }
+    }
+
+    private fun isCoalescible(request: Request): Boolean {
+        if (request.method() != "GET" && request.method() != "HEAD")
+            return false
+        val method = request.tag(Invocation::class.java)?.method() ?: return true
+        return !method.isAnnotationPresent(Streaming::class.java)
+    }
+
+    private fun key(request: Request): String {
+        return "${request.method()} ${request.url()}\n${request.headers()}"
+    }
+
+    /**
+     * 正在进行的请求
+     */
+    private class Flight {
+
+        private val latch = CountDownLatch(1)
+
+        @Volatile
+        private var response: Response? = null
+
+        @Volatile
+        private var bytes: ByteArray? = null
+
+        @Volatile
+        private var error: IOException? = null
+
+        fun complete(response: Response?, bytes: ByteArray?) {
+            this.response = response
+            this.bytes = bytes
+            latch.countDown()
+        }
+
+        fun fail(error: IOException?) {
+            this.error = error
+            latch.countDown()
+        }
+
+        /**
+         * 等待请求完成
+         * @return 响应的副本；无法共享时返回null，由调用方自行请求
+         */
+        fun await(chain: Interceptor.Chain): Response? {
+            val call = chain.call()
+            while (!latch.await(AWAIT_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (call.isCanceled)
+                    throw IOException("Canceled")
+            }
+            error?.let {
+                throw IOException("the coalesced request failed.", it)
+            }
+            val response = response ?: return null
+            val bytes = bytes ?: return null
+            return response.newBuilder()
+                .request(chain.request())
+                .body(ResponseBody.create(response.body()?.contentType(), bytes))
+                .build()
+        }
+    }
+
+    private companion object {
+        //等待期间检查取消的间隔
+        const val AWAIT_INTERVAL = 100L
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unics.oknet.okhttp
+
+import okhttp3.Interceptor
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okio.BufferedSource
+import okio.ForwardingSource
+import okio.Okio
+import retrofit2.Invocation
+import retrofit2.http.Streaming
+import unics.oknet.OkNet
+import unics.oknet.logd
+import java.io.File
+import java.io.IOException
+
+/**
+ * 大响应体落盘拦截器：响应体超过[threshold]时先完整写入临时文件，再把基于文件的响应体交给Retrofit的Converter，
+ * 避免超大响应（比如报表导出）在内存中完整读取；不超过阈值的响应体保持原样。
+ * 使用[Streaming]注解的Retrofit方法（比如文件下载）不做处理。
+ *
+ * 使用方式：在[OkNet.LazyInitializer.onSetup]中调用`oBuilder.addInterceptor(SpillToDiskInterceptor())`
+ *
+ * @param threshold 阈值（字节），默认4M
+ * @param directory 临时文件目录，为空时使用`cacheDir/oknet_spill`；临时文件在响应体关闭时删除
+ */
+class SpillToDiskInterceptor @JvmOverloads constructor(
+    private val threshold: Long = 4 * 1024 * 1024,
+    private val directory: File? = null
+) : Interceptor {
+
+    @Volatile
+    private var spillDir: File? = null
+
+    init {
+        require(threshold >= 0) {
+            "threshold must not be negative."
+        }
+    }
+
+    override fun intercept(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val response = chain.proceed(request)
+        val body = response.body() ?: return response
+        if (isStreaming(request))
+            return response
+        val contentLength = body.contentLength()
+        if (contentLength in 0..threshold)
+            return response
+        val source = body.source()
+        //长度未知时先尝试读取阈值大小的数据，全部读取完成说明未超过阈值，数据已在内存中
+        if (contentLength < 0 && !source.request(threshold + 1))
+            return response
+        val file = File.createTempFile(PREFIX, null, obtainSpillDir())
+        logd { "[SpillToDiskInterceptor] spill the response body of ${request.url()} to $file" }
+        try {
+            Okio.sink(file).use {
+                source.readAll(it)
+            }
+        } catch (e: IOException) {
+            file.delete()
+            throw e
+        } finally {
+            body.close()
+        }
+        return response.newBuilder()
+            .body(FileResponseBody(body.contentType(), file))
+            .build()
+    }
+
+    private fun isStreaming(request: Request): Boolean {
+        val method = request.tag(Invocation::class.java)?.method() ?: return false
+        return method.isAnnotationPresent(Streaming::class.java)
+    }
+
+    private fun obtainSpillDir(): File {
+        spillDir?.let {
+            return it
+        }
+        synchronized(this) {
+            spillDir?.let {
+                return it
+            }
+            val dir = directory ?: File(OkNet.app.cacheDir, "oknet_spill")
+            if (!dir.exists() && !dir.mkdirs())
+                throw IOException("create spill dir failed.")
+            //清理上次进程遗留的临时文件
+            dir.listFiles { _, name -> name.startsWith(PREFIX) }?.forEach {
+                it.delete()
+            }
+            spillDir = dir
+            return dir
+        }
+    }
+
+    /**
+     * 基于文件的响应体，关闭时删除文件
+     */
+    private class FileResponseBody(
+        private val contentType: MediaType?,
+        private val file: File
+    ) : ResponseBody() {
+
+        private val length = file.length()
+
+        private var source: BufferedSource? = null
+
+        override fun contentType(): MediaType? = contentType
+
+        override fun contentLength(): Long = length
+
+        override fun source(): BufferedSource {
+            return source ?: Okio.buffer(object : ForwardingSource(Okio.source(file)) {
+                override fun close() {
+                    try {
+                        super.close()
+                    } finally {
+                        file.delete()
+                    }
+                }
+            }).also {
+                source = it
+            }
+        }
+
+        override fun close() {
+            val current = source
+            if (current != null) {
+                current.close()
+            } else {
+                file.delete()
+            }
+        }
+    }
+
+    private companion object {
+        const val PREFIX = "oknet_spill_"
+    }
+}
@@ -0,0 +1,22 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 批量进度回调：按固定间隔一次性分发所有发生变化的任务进度，
+ * 用于同时存在大量任务时减少回调和界面刷新的次数
+ *
+ * @see OkNetUseCase#addBatchCallback(BatchProgressCallback, long)
+ */
+public interface BatchProgressCallback {
+
+    /**
+     * @param changed 上次分发之后进度发生变化的任务；列表会被复用，请不要在回调之外持有
+     */
+    void onBatchProgressChanged(@NotNull List<ProgressInfo> changed);
+
+}
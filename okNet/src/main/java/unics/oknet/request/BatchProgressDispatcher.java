@@ -0,0 +1,124 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 批量进度分发：每个订阅者记录自上次分发后发生变化的任务，按订阅的间隔一次性分发
+ */
+final class BatchProgressDispatcher {
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    synchronized void add(@NotNull BatchProgressCallback callback, long intervalMillis) {
+        if (intervalMillis <= 0)
+            throw new IllegalArgumentException("intervalMillis must be greater than 0.");
+        remove(callback);
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "OkNet-BatchProgress");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        Subscription subscription = new Subscription(callback);
+        subscription.future = scheduler.scheduleAtFixedRate(subscription, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        subscriptions.add(subscription);
+    }
+
+    synchronized boolean remove(@NotNull BatchProgressCallback callback) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.callback.equals(callback)) {
+                subscription.future.cancel(false);
+                subscriptions.remove(subscription);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 标记任务进度发生变化
+     */
+    void markChanged(@NotNull ProgressInfo info) {
+        for (Subscription subscription : subscriptions) {
+            subscription.changed.put(info.id(), info);
+        }
+    }
+
+    private static final class Subscription implements Runnable {
+
+        private final BatchProgressCallback callback;
+        //上次分发后发生变化的任务；声明为Map，ConcurrentHashMap.keySet()的KeySetView返回值需要API 24
+        private final Map<String, ProgressInfo> changed = new ConcurrentHashMap<>();
+        //复用的分发列表
+        private final ArrayList<ProgressInfo> batch = new ArrayList<>();
+        private final List<ProgressInfo> readOnlyBatch = Collections.unmodifiableList(batch);
+        //上一批是否还在等待执行器执行，执行器繁忙时跳过本次分发，变化累积到下一次
+        private final AtomicBoolean pending = new AtomicBoolean();
+        private final Runnable deliverTask = this::deliver;
+        private ScheduledFuture<?> future;
+
+        Subscription(@NotNull BatchProgressCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (changed.isEmpty() || !pending.compareAndSet(false, true))
+                return;
+            Executor executor = OkNetUseCase.getInstance().progressExecutor;
+            if (executor == null) {
+                deliver();
+                return;
+            }
+            try {
+                executor.execute(deliverTask);
+            } catch (RejectedExecutionException e) {
+                pending.set(false);
+            }
+        }
+
+        private void deliver() {
+            try {
+                batch.clear();
+                //先移除标记再读取进度，读取期间的更新会在下一次分发
+                for (String id : changed.keySet()) {
+                    ProgressInfo info = changed.remove(id);
+                    if (info != null)
+                        batch.add(info);
+                }
+                if (!batch.isEmpty())
+                    callback.onBatchProgressChanged(readOnlyBatch);
+            } catch (Throwable e) {
+                e.printStackTrace();
+            } finally {
+                batch.clear();
+                pending.set(false);
+            }
+        }
+    }
+}
@@ -2,8 +2,11 @@ package unics.oknet.request;
 
 import org.jetbrains.annotations.NotNull;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -11,19 +14,27 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * on 2023/12/26
  * 回调持有者，里面保存了客户回调
  */
-class CallbackHolder implements ProgressCallback, FileDownloadCallback {
+class CallbackHolder implements ProgressCallback, FileDownloadCallback, MultipartUploadCallback {
 
     private String id;
 
     private final CopyOnWriteArrayList<ProgressCallback> refs = new CopyOnWriteArrayList<>();
 
+    //按类型分组的回调，添加时分组，分发时不需要再逐个判断类型
+    private final CopyOnWriteArrayList<FileDownloadCallback> downloadRefs = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<FileUploadCallback> uploadRefs = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<MultipartUploadCallback> multipartRefs = new CopyOnWriteArrayList<>();
+
+    //单独设置了节流的回调
+    private final ConcurrentHashMap<ProgressCallback, ProgressThrottle.State> throttles = new ConcurrentHashMap<>();
+
     public CallbackHolder(String id) {
         this.id = id;
     }
 
-    public CallbackHolder(String id, ProgressCallback ref) {
+    public CallbackHolder(String id, ProgressCallback ref, @Nullable ProgressThrottle throttle) {
         this.id = id;
-        refs.add(ref);
+        add(ref, throttle);
     }
 
     @NotNull
@@ -31,14 +42,42 @@ class CallbackHolder implements ProgressCallback, FileDownloadCallback {
         return refs;
     }
 
-    public void add(ProgressCallback real) {
-        if (this.refs.contains(real))
-            return;
-        this.refs.add(real);
+    /**
+     * @return false:回调已存在
+     */
+    public boolean add(ProgressCallback real) {
+        return add(real, null);
+    }
+
+    /**
+     * @param throttle 该回调单独的进度节流
+     * @return false:回调已存在
+     */
+    public boolean add(ProgressCallback real, @Nullable ProgressThrottle throttle) {
+        if (!this.refs.addIfAbsent(real))
+            return false;
+        if (throttle != null)
+            throttles.put(real, throttle.newState());
+        //弱引用回调按实际回调的类型分组
+        ProgressCallback target = real instanceof WeakProgressCallback ? ((WeakProgressCallback) real).get() : real;
+        if (target instanceof FileDownloadCallback) {
+            downloadRefs.add((FileDownloadCallback) real);
+        } else if (target instanceof FileUploadCallback) {
+            uploadRefs.add((FileUploadCallback) real);
+            if (target instanceof MultipartUploadCallback)
+                multipartRefs.add((MultipartUploadCallback) real);
+        }
+        return true;
     }
 
     public boolean remove(ProgressCallback callback) {
-        return this.refs.remove(callback);
+        if (!this.refs.remove(callback))
+            return false;
+        downloadRefs.remove(callback);
+        uploadRefs.remove(callback);
+        multipartRefs.remove(callback);
+        throttles.remove(callback);
+        return true;
     }
 
     public boolean contains(ProgressCallback callback) {
@@ -55,6 +94,10 @@ class CallbackHolder implements ProgressCallback, FileDownloadCallback {
 
     public void reset() {
         this.refs.clear();
+        this.downloadRefs.clear();
+        this.uploadRefs.clear();
+        this.multipartRefs.clear();
+        this.throttles.clear();
         this.id = null;
     }
 
@@ -63,42 +106,67 @@ class CallbackHolder implements ProgressCallback, FileDownloadCallback {
      * @param id
      * @param callback
      */
-    void reuse(String id, ProgressCallback callback) {
+    void reuse(String id, ProgressCallback callback, @Nullable ProgressThrottle throttle) {
         this.id = id;
-        this.refs.add(callback);
+        add(callback, throttle);
     }
 
     @Override
     public void onProgressChanged(@NotNull ProgressInfo progress) {
+        if (throttles.isEmpty()) {
+            for (ProgressCallback callback : refs) {
+                callback.onProgressChanged(progress);
+            }
+            return;
+        }
+        long now = progress.lastUpdateRealtime();
+        long bytesHandled = progress.currentSize();
+        long bytesTotal = progress.totalSize();
         for (ProgressCallback callback : refs) {
-            callback.onProgressChanged(progress);
+            ProgressThrottle.State throttle = throttles.get(callback);
+            if (throttle == null || throttle.tryPass(now, bytesHandled, bytesTotal))
+                callback.onProgressChanged(progress);
+        }
+    }
+
+    @Override
+    public void onFileProgressChanged(@NotNull File file, @NotNull ProgressInfo progress) {
+        for (MultipartUploadCallback callback : multipartRefs) {
+            callback.onFileProgressChanged(file, progress);
         }
     }
 
     @Override
     public void onStart(@NotNull String url) {
-        for (ProgressCallback callback : refs) {
-            if (callback instanceof FileDownloadCallback) {
-                ((FileDownloadCallback) callback).onStart(url);
-            }
+        for (FileDownloadCallback callback : downloadRefs) {
+            callback.onStart(url);
+        }
+        for (FileUploadCallback callback : uploadRefs) {
+            callback.onStart(url);
         }
     }
 
     @Override
     public void onComplete(@NotNull String url, @NotNull File file) {
-        for (ProgressCallback callback : refs) {
-            if (callback instanceof FileDownloadCallback) {
-                ((FileDownloadCallback) callback).onComplete(url, file);
-            }
+        for (FileDownloadCallback callback : downloadRefs) {
+            callback.onComplete(url, file);
+        }
+    }
+
+    @Override
+    public void onComplete(@NotNull String url, @NotNull String response) {
+        for (FileUploadCallback callback : uploadRefs) {
+            callback.onComplete(url, response);
         }
     }
 
     @Override
     public void onError(@NotNull String url, @NotNull Throwable e) {
-        for (ProgressCallback callback : refs) {
-            if (callback instanceof FileDownloadCallback) {
-                ((FileDownloadCallback) callback).onError(url, e);
-            }
+        for (FileDownloadCallback callback : downloadRefs) {
+            callback.onError(url, e);
+        }
+        for (FileUploadCallback callback : uploadRefs) {
+            callback.onError(url, e);
         }
     }
 }
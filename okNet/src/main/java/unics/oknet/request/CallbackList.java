@@ -3,8 +3,12 @@ package unics.oknet.request;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Iterator;
-import java.util.Map;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
@@ -17,21 +21,51 @@ class CallbackList {
     private final ConcurrentHashMap<String, CallbackHolder> callbacks = new ConcurrentHashMap<>();
     private final ConcurrentLinkedQueue<CallbackHolder> cachedCallbacks = new ConcurrentLinkedQueue<CallbackHolder>();
 
+    //反向索引：回调 -> 注册了该回调的任务id，移除和查找回调时不需要遍历所有任务
+    private final HashMap<ProgressCallback, Set<String>> callbackIds = new HashMap<>();
+
+    //弱引用回调：客户端回调 -> 弱引用包装，回调被回收后包装进入引用队列，在下次操作时移除
+    private final WeakHashMap<ProgressCallback, WeakProgressCallback> weakCallbacks = new WeakHashMap<>();
+    private final ReferenceQueue<ProgressCallback> staleCallbacks = new ReferenceQueue<>();
+
     @NotNull
     public CallbackHolder add(String key, ProgressCallback ref) {
-        CallbackHolder callbackProxy;
-        if (callbacks.containsKey(key)) {
-            callbackProxy = callbacks.get(key);
-            callbackProxy.add(ref);
+        return add(key, ref, false);
+    }
+
+    @NotNull
+    public CallbackHolder add(String key, ProgressCallback ref, boolean weak) {
+        return add(key, ref, weak, null);
+    }
+
+    /**
+     * @param weak     是否使用弱引用持有回调
+     * @param throttle 该回调单独的进度节流
+     */
+    @NotNull
+    public synchronized CallbackHolder add(String key, ProgressCallback ref, boolean weak, @Nullable ProgressThrottle throttle) {
+        expungeStaleCallbacks();
+        if (weak)
+            ref = obtainWeakCallback(ref);
+        CallbackHolder callbackProxy = callbacks.get(key);
+        if (callbackProxy != null) {
+            if (!callbackProxy.add(ref, throttle))
+                return callbackProxy;
         } else {
             callbackProxy = cachedCallbacks.poll();
             if (callbackProxy == null) {
-                callbackProxy = new CallbackHolder(key, ref);
+                callbackProxy = new CallbackHolder(key, ref, throttle);
             } else {
-                callbackProxy.reuse(key, ref);
+                callbackProxy.reuse(key, ref, throttle);
             }
             callbacks.put(key, callbackProxy);
         }
+        Set<String> ids = callbackIds.get(ref);
+        if (ids == null) {
+            ids = new HashSet<>(2);
+            callbackIds.put(ref, ids);
+        }
+        ids.add(key);
         return callbackProxy;
     }
 
@@ -40,39 +74,91 @@ class CallbackList {
         return callbacks.get(key);
     }
 
-    public void remove(String key) {
-        CallbackHolder value = callbacks.getOrDefault(key, null);
+    public synchronized void remove(String key) {
+        CallbackHolder value = detach(key);
+        if (value != null)
+            recycle(value);
+    }
+
+    /**
+     * 移除任务的回调但不回收，用于在其它线程中继续分发任务结束的回调，分发后调用{@link #recycle(CallbackHolder)}
+     */
+    @Nullable
+    public synchronized CallbackHolder detach(String key) {
+        expungeStaleCallbacks();
+        CallbackHolder value = callbacks.remove(key);
         if (value != null) {
-            value.reset();
-            try {
-                callbacks.remove(key, value);
-            } catch (Throwable ignored) {
+            for (ProgressCallback callback : value.getCallbacks()) {
+                removeIndex(callback, key);
             }
-            cachedCallbacks.offer(value);
         }
+        return value;
     }
 
-    public void remove(ProgressCallback callback) {
-        Iterator<Map.Entry<String, CallbackHolder>> it = callbacks.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, CallbackHolder> next = it.next();
-            CallbackHolder safeProgressCallback = next.getValue();
-            if (safeProgressCallback == null || (safeProgressCallback.remove(callback) && safeProgressCallback.isEmpty())) {
-                it.remove();
-                if (safeProgressCallback != null) {
-                    safeProgressCallback.reset();
-                    cachedCallbacks.offer(safeProgressCallback);
-                }
+    /**
+     * 回收{@link #detach(String)}移除的回调
+     */
+    public void recycle(@NotNull CallbackHolder holder) {
+        holder.reset();
+        cachedCallbacks.offer(holder);
+    }
+
+    public synchronized void remove(ProgressCallback callback) {
+        expungeStaleCallbacks();
+        removeCallback(callback);
+        WeakProgressCallback weakCallback = weakCallbacks.remove(callback);
+        if (weakCallback != null)
+            removeCallback(weakCallback);
+    }
+
+    public synchronized boolean contains(ProgressCallback callback) {
+        expungeStaleCallbacks();
+        if (callbackIds.containsKey(callback))
+            return true;
+        WeakProgressCallback weakCallback = weakCallbacks.get(callback);
+        return weakCallback != null && callbackIds.containsKey(weakCallback);
+    }
+
+    private void removeCallback(ProgressCallback callback) {
+        Set<String> ids = callbackIds.remove(callback);
+        if (ids == null)
+            return;
+        for (String id : ids) {
+            CallbackHolder holder = callbacks.get(id);
+            if (holder != null && holder.remove(callback) && holder.isEmpty()) {
+                callbacks.remove(id, holder);
+                holder.reset();
+                cachedCallbacks.offer(holder);
             }
         }
     }
 
-    public boolean contains(ProgressCallback callback) {
-        for (CallbackHolder holder : callbacks.values()) {
-            if (holder.contains(callback))
-                return true;
+    @NotNull
+    private WeakProgressCallback obtainWeakCallback(ProgressCallback callback) {
+        if (callback instanceof WeakProgressCallback)
+            return (WeakProgressCallback) callback;
+        WeakProgressCallback weakCallback = weakCallbacks.get(callback);
+        if (weakCallback == null) {
+            weakCallback = new WeakProgressCallback(callback, staleCallbacks);
+            weakCallbacks.put(callback, weakCallback);
+        }
+        return weakCallback;
+    }
+
+    /**
+     * 移除已被回收的弱引用回调
+     */
+    private void expungeStaleCallbacks() {
+        Reference<? extends ProgressCallback> reference;
+        while ((reference = staleCallbacks.poll()) != null) {
+            removeCallback((WeakProgressCallback) reference);
         }
-        return false;
+    }
+
+    private void removeIndex(ProgressCallback callback, String key) {
+        Set<String> ids = callbackIds.get(callback);
+        if (ids != null && ids.remove(key) && ids.isEmpty())
+            callbackIds.remove(callback);
     }
 
 }
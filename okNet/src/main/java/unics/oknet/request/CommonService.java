@@ -1,8 +1,17 @@
 package unics.oknet.request;
 
+import java.util.Map;
+
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
+import retrofit2.http.Body;
 import retrofit2.http.GET;
+import retrofit2.http.HEAD;
+import retrofit2.http.Header;
+import retrofit2.http.HeaderMap;
+import retrofit2.http.PATCH;
+import retrofit2.http.POST;
 import retrofit2.http.Streaming;
 import retrofit2.http.Tag;
 import retrofit2.http.Url;
@@ -21,4 +30,28 @@ interface CommonService {
     @GET
     Call<ResponseBody> download(@Url String url, @Tag DownloadPrgCallback callback);
 
+    @Streaming
+    @GET
+    Call<ResponseBody> download(@Url String url, @HeaderMap Map<String, String> headers);
+
+    @Streaming
+    @GET
+    Call<ResponseBody> download(@Url String url, @HeaderMap Map<String, String> headers, @Tag DownloadPrgCallback callback);
+
+    @Streaming
+    @GET
+    Call<ResponseBody> range(@Url String url, @Header("Range") String range);
+
+    @POST
+    Call<ResponseBody> upload(@Url String url, @Body RequestBody body);
+
+    @POST
+    Call<ResponseBody> upload(@Url String url, @Body RequestBody body, @Tag UploadPrgCallback callback);
+
+    @HEAD
+    Call<Void> uploadOffset(@Url String url, @Header(ResumableUpload.UPLOAD_ID) String uploadId);
+
+    @PATCH
+    Call<ResponseBody> uploadChunk(@Url String url, @HeaderMap Map<String, String> headers, @Body RequestBody body, @Tag UploadPrgCallback callback);
+
 }
@@ -0,0 +1,366 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.HashingSink;
+import okio.Okio;
+import okio.Source;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import unics.oknet.OkNet;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 按清单同步目录：与本地索引比较后只并行下载新增/变化的文件，未变化的文件复制到暂存目录，
+ * 最后通过目录重命名整体发布新目录，发布前原目录保持不变。
+ * 每次同步使用独立的下载线程池：同步会阻塞等待所有下载完成，如果提交到共享线程池，
+ * 在共享线程池的线程中调用同步时可能因为线程被占满而互相等待
+ */
+final class DirectorySync {
+
+    /**
+     * 本地索引文件，记录每个文件的大小、修改时间和SHA-256，避免每次同步都重新计算哈希
+     */
+    static final String INDEX_FILE = ".oknet_sync_index";
+
+    private static final String STAGING_SUFFIX = ".sync";
+    private static final String BACKUP_SUFFIX = ".old";
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final int parallelism;
+    private final SyncManifest manifest;
+    private final File dir;
+    private final File staging;
+    private final File backup;
+
+    //正在执行的下载请求：OkHttp不响应线程中断，失败时需要取消请求才能停止其余下载
+    private final Set<Call<?>> runningCalls = Collections.synchronizedSet(new HashSet<>());
+    //下载是否已结束（全部完成或者有下载失败），之后不再发起新的下载
+    private volatile boolean stopped;
+
+    /**
+     * @param parallelism 同时下载的最大文件数
+     */
+    DirectorySync(int parallelism, @NotNull SyncManifest manifest, @NotNull File dir) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be positive.");
+        this.parallelism = parallelism;
+        this.manifest = manifest;
+        this.dir = dir.getAbsoluteFile();
+        this.staging = new File(this.dir.getParentFile(), this.dir.getName() + STAGING_SUFFIX);
+        this.backup = new File(this.dir.getParentFile(), this.dir.getName() + BACKUP_SUFFIX);
+    }
+
+    @NotNull
+    SyncResult execute() throws IOException {
+        recoverInterruptedPublish();
+        Map<String, Indexed> index = loadIndex(new File(dir, INDEX_FILE));
+
+        //比较清单与本地目录
+        List<SyncManifest.Entry> changed = new ArrayList<>();
+        List<SyncManifest.Entry> unchanged = new ArrayList<>();
+        Set<String> paths = new HashSet<>();
+        for (SyncManifest.Entry entry : manifest.entries()) {
+            if (!paths.add(entry.path()))
+                throw new IllegalArgumentException("duplicate sync path:" + entry.path());
+            if (entry.sha256().equals(localHash(entry, index.get(entry.path())))) {
+                unchanged.add(entry);
+            } else {
+                changed.add(entry);
+            }
+        }
+
+        deleteRecursively(staging);
+        mkdirs(staging);
+        try {
+            downloadAll(changed);
+            for (SyncManifest.Entry entry : unchanged) {
+                copy(new File(dir, entry.path()), stagingFile(entry));
+            }
+            saveIndex(new File(staging, INDEX_FILE));
+            List<String> deleted = new ArrayList<>();
+            collectStale(dir, "", paths, deleted);
+            publish();
+            List<String> downloaded = new ArrayList<>(changed.size());
+            for (SyncManifest.Entry entry : changed) {
+                downloaded.add(entry.path());
+            }
+            return new SyncResult(downloaded, deleted, unchanged.size());
+        } catch (IOException | RuntimeException e) {
+            deleteRecursively(staging);
+            throw e;
+        }
+    }
+
+    /**
+     * 本地文件的SHA-256；文件不存在或者大小不一致时返回null；
+     * 索引中记录的大小和修改时间与文件一致时直接使用索引中的哈希
+     */
+    @Nullable
+    private String localHash(@NotNull SyncManifest.Entry entry, @Nullable Indexed indexed) throws IOException {
+        File file = new File(dir, entry.path());
+        if (!file.isFile() || file.length() != entry.size())
+            return null;
+        if (indexed != null
+                && indexed.size == file.length()
+                && indexed.lastModified == file.lastModified()) {
+            return indexed.sha256;
+        }
+        HashingSink hashing = HashingSink.sha256(Okio.blackhole());
+        try (Source source = Okio.source(file); BufferedSink sink = Okio.buffer(hashing)) {
+            sink.writeAll(source);
+        }
+        return hashing.hash().hex();
+    }
+
+    /**
+     * 并行下载；任意一个失败则取消其余正在执行的请求，尚未开始的下载不再发起
+     */
+    private void downloadAll(@NotNull List<SyncManifest.Entry> entries) throws IOException {
+        if (entries.isEmpty())
+            return;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, entries.size()), runnable -> {
+            Thread thread = new Thread(runnable, "OkNet-Sync-" + THREAD_ID.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        //按完成的顺序获取结果，任意一个失败时立即结束，不需要等待前面较慢的下载
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Void>> futures = new ArrayList<>(entries.size());
+        for (SyncManifest.Entry entry : entries) {
+            futures.add(completion.submit(() -> {
+                download(entry);
+                return null;
+            }));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("sync interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException(cause);
+        } finally {
+            stopped = true;
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            cancelRunningCalls();
+        }
+    }
+
+    private void cancelRunningCalls() {
+        List<Call<?>> calls;
+        synchronized (runningCalls) {
+            calls = new ArrayList<>(runningCalls);
+        }
+        for (Call<?> call : calls) {
+            call.cancel();
+        }
+    }
+
+    private void download(@NotNull SyncManifest.Entry entry) throws IOException {
+        File target = stagingFile(entry);
+        mkdirs(target.getParentFile());
+        Call<ResponseBody> call = OkNet.createApiService(CommonService.class, true)
+                .download(entry.url());
+        //先记录请求再检查标记，保证并发失败时请求一定会被取消
+        runningCalls.add(call);
+        long size;
+        HashingSink hashing;
+        try {
+            if (stopped)
+                throw new IOException("Canceled");
+            retrofit2.Response<ResponseBody> response = call.execute();
+            ResponseBody body = response.body();
+            if (body == null)
+                throw new HttpException(response);
+            hashing = HashingSink.sha256(Okio.sink(target));
+            try (ResponseBody closeable = body; BufferedSink sink = Okio.buffer(hashing)) {
+                size = sink.writeAll(closeable.source());
+            }
+        } finally {
+            runningCalls.remove(call);
+        }
+        if (size != entry.size() || !entry.sha256().equals(hashing.hash().hex())) {
+            throw new IOException("verify failed:" + entry.path() + " (size=" + size + ",expected=" + entry.size() + ")");
+        }
+    }
+
+    private static void copy(@NotNull File source, @NotNull File target) throws IOException {
+        mkdirs(target.getParentFile());
+        try (Source input = Okio.source(source); BufferedSink sink = Okio.buffer(Okio.sink(target))) {
+            sink.writeAll(input);
+        }
+    }
+
+    private void saveIndex(@NotNull File indexFile) throws IOException {
+        Properties properties = new Properties();
+        for (SyncManifest.Entry entry : manifest.entries()) {
+            File file = stagingFile(entry);
+            properties.setProperty(entry.path(), file.length() + "," + file.lastModified() + "," + entry.sha256());
+        }
+        try (OutputStream output = new FileOutputStream(indexFile)) {
+            properties.store(output, null);
+        }
+    }
+
+    /**
+     * 读取本地索引；无法解析的记录忽略，对应的文件重新计算哈希
+     */
+    @NotNull
+    private static Map<String, Indexed> loadIndex(@NotNull File indexFile) {
+        Map<String, Indexed> index = new HashMap<>();
+        if (!indexFile.exists())
+            return index;
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(indexFile)) {
+            properties.load(input);
+        } catch (IOException e) {
+            //索引损坏时重新计算哈希
+            e.printStackTrace();
+            return index;
+        }
+        for (String path : properties.stringPropertyNames()) {
+            String[] values = properties.getProperty(path).split(",", 3);
+            if (values.length != 3)
+                continue;
+            try {
+                index.put(path, new Indexed(Long.parseLong(values[0]), Long.parseLong(values[1]), values[2]));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 收集原目录中清单不再包含的文件
+     */
+    private static void collectStale(@NotNull File parent, @NotNull String prefix, @NotNull Set<String> paths, @NotNull List<String> out) {
+        File[] files = parent.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isDirectory()) {
+                collectStale(file, path + "/", paths, out);
+            } else if (!paths.contains(path) && !INDEX_FILE.equals(path)) {
+                out.add(path);
+            }
+        }
+    }
+
+    /**
+     * 发布新目录：原目录重命名为备份目录，暂存目录重命名为原目录，最后删除备份
+     */
+    private void publish() throws IOException {
+        boolean hasOld = dir.exists();
+        if (hasOld) {
+            deleteRecursively(backup);
+            rename(dir, backup);
+        }
+        try {
+            rename(staging, dir);
+        } catch (IOException e) {
+            if (hasOld)
+                rename(backup, dir);
+            throw e;
+        }
+        if (hasOld)
+            deleteRecursively(backup);
+    }
+
+    /**
+     * 上次发布过程中进程退出：目录已重命名为备份但新目录未发布，则恢复备份
+     */
+    private void recoverInterruptedPublish() throws IOException {
+        if (!backup.exists())
+            return;
+        if (dir.exists()) {
+            deleteRecursively(backup);
+        } else {
+            rename(backup, dir);
+        }
+    }
+
+    private static void rename(@NotNull File source, @NotNull File target) throws IOException {
+        if (!source.renameTo(target))
+            throw new FileSystemException("rename " + source + " to " + target + " failed.");
+    }
+
+    @NotNull
+    private File stagingFile(@NotNull SyncManifest.Entry entry) {
+        return new File(staging, entry.path());
+    }
+
+    private static void mkdirs(@Nullable File dir) throws IOException {
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new FileSystemException("create file dir failed.");
+        }
+    }
+
+    /**
+     * 索引中的一条记录
+     */
+    private static final class Indexed {
+
+        private final long size;
+        private final long lastModified;
+        private final String sha256;
+
+        Indexed(long size, long lastModified, @NotNull String sha256) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+        }
+    }
+
+    static void deleteRecursively(@NotNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+}
@@ -0,0 +1,101 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import okhttp3.Headers;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 条件下载的校验信息（ETag/Last-Modified），保存在目标文件旁的{@link #SUFFIX}文件中；
+ * 再次下载时通过If-None-Match/If-Modified-Since询问服务端，文件未变化时服务端返回304，无需重新下载
+ */
+final class DownloadValidator {
+
+    static final String SUFFIX = ".validator";
+
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private DownloadValidator() {
+    }
+
+    /**
+     * 校验信息保存的文件
+     */
+    @NotNull
+    static File validatorFile(@NotNull File file) {
+        return new File(file.getParentFile(), file.getName() + SUFFIX);
+    }
+
+    /**
+     * 生成条件请求头；目标文件或者校验信息不存在时返回空集合，即执行完整下载
+     */
+    @NotNull
+    static Map<String, String> conditionalHeaders(@NotNull File file) {
+        File validator = validatorFile(file);
+        if (!file.exists() || !validator.exists())
+            return Collections.emptyMap();
+        Properties properties = new Properties();
+        try (InputStream input = new FileInputStream(validator)) {
+            properties.load(input);
+        } catch (IOException e) {
+            //校验信息损坏，执行完整下载
+            e.printStackTrace();
+            return Collections.emptyMap();
+        }
+        Map<String, String> headers = new HashMap<>(2);
+        String etag = properties.getProperty(ETAG);
+        if (etag != null)
+            headers.put("If-None-Match", etag);
+        String lastModified = properties.getProperty(LAST_MODIFIED);
+        if (lastModified != null)
+            headers.put("If-Modified-Since", lastModified);
+        return headers;
+    }
+
+    /**
+     * 删除校验信息，在重新写入文件前调用
+     */
+    static void invalidate(@NotNull File file) throws IOException {
+        File validator = validatorFile(file);
+        if (validator.exists() && !validator.delete())
+            throw new IOException("delete validator file failed.");
+    }
+
+    /**
+     * 保存校验信息，必须在文件完整写入后调用
+     *
+     * @param headers 响应头，为空或者没有校验字段时删除已有的校验信息，避免与新写入的文件不匹配
+     */
+    static void save(@NotNull File file, @Nullable Headers headers) throws IOException {
+        File validator = validatorFile(file);
+        String etag = headers == null ? null : headers.get(ETAG);
+        String lastModified = headers == null ? null : headers.get(LAST_MODIFIED);
+        if (etag == null && lastModified == null) {
+            invalidate(file);
+            return;
+        }
+        Properties properties = new Properties();
+        if (etag != null)
+            properties.setProperty(ETAG, etag);
+        if (lastModified != null)
+            properties.setProperty(LAST_MODIFIED, lastModified);
+        try (OutputStream output = new FileOutputStream(validator)) {
+            properties.store(output, null);
+        }
+    }
+
+}
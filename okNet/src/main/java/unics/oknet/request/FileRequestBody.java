@@ -0,0 +1,89 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 文件（或者文件中的一段）作为请求体，用于文件上传、分片上传和多文件上传；
+ * 写入请求时才打开文件，直接读取到sink的缓冲段中，不经过额外的中间缓冲区，并直接统计进度
+ */
+class FileRequestBody extends RequestBody {
+
+    //单次读取的大小，每读取这么多字节统计一次进度
+    private static final long READ_SIZE = 64 * 1024;
+
+    private final File file;
+    private final long offset;
+    private final long length;
+    private final MediaType contentType;
+    @Nullable
+    private final UploadPrgCallback callback;
+
+    FileRequestBody(@NotNull File file, long offset, long length, @Nullable MediaType contentType) {
+        this(file, offset, length, contentType, null);
+    }
+
+    /**
+     * @param callback 当前请求体的写入进度，用于多文件上传中单个文件的进度
+     */
+    FileRequestBody(@NotNull File file, long offset, long length, @Nullable MediaType contentType, @Nullable UploadPrgCallback callback) {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException("offset and length must not be negative.");
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+        this.contentType = contentType;
+        this.callback = callback;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        writeTo(sink, callback);
+    }
+
+    /**
+     * 从文件直接读取到sink的缓冲段中（只有内核到缓冲段的一次拷贝），并在写入时统计进度，
+     * 不需要{@link RequestProgressBody}再包装一层缓冲
+     *
+     * @param progress 写入进度
+     */
+    void writeTo(@NotNull BufferedSink sink, @Nullable UploadPrgCallback progress) throws IOException {
+        //AS拦截器监听等写入内存的情况不统计进度
+        if (sink instanceof Buffer)
+            progress = null;
+        try (FileInputStream input = new FileInputStream(file)) {
+            input.getChannel().position(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                long count = Math.min(READ_SIZE, remaining);
+                //文件比预期短时抛出EOFException
+                sink.buffer().readFrom(input, count);
+                sink.emitCompleteSegments();
+                remaining -= count;
+                if (progress != null)
+                    progress.onProgress(count, length - remaining, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ */
+public interface FileUploadCallback extends ProgressCallback {
+
+    void onStart(@NotNull String url);
+
+    /**
+     * @param response 服务端返回的响应内容
+     */
+    void onComplete(@NotNull String url, @NotNull String response);
+
+    void onError(@NotNull String url, @NotNull Throwable e);
+
+}
@@ -0,0 +1,129 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 多文件上传：按multipart格式上传多个文件和表单字段，写入请求时才从磁盘逐个读取文件内容，不会在内存中构建完整的请求体；
+ * 用于{@link OkNetUseCase#upload(String, MultipartUpload, ProgressCallback)}，
+ * 通过{@link MultipartUploadCallback}可以同时获取单个文件和整批的进度
+ */
+public final class MultipartUpload {
+
+    private static final MediaType DEFAULT_FILE_TYPE = MediaType.parse("application/octet-stream");
+
+    private static final class Part {
+
+        private final String name;
+        @Nullable
+        private final String value;
+        @Nullable
+        private final File file;
+        @Nullable
+        private final MediaType contentType;
+
+        Part(@NotNull String name, @Nullable String value, @Nullable File file, @Nullable MediaType contentType) {
+            this.name = name;
+            this.value = value;
+            this.file = file;
+            this.contentType = contentType;
+        }
+    }
+
+    private final MediaType type;
+
+    private final List<Part> parts = new ArrayList<>();
+
+    public MultipartUpload() {
+        this(MultipartBody.FORM);
+    }
+
+    /**
+     * @param type multipart类型，默认{@link MultipartBody#FORM}
+     */
+    public MultipartUpload(@NotNull MediaType type) {
+        this.type = type;
+    }
+
+    /**
+     * 添加表单字段
+     */
+    @NotNull
+    public MultipartUpload addFormField(@NotNull String name, @NotNull String value) {
+        parts.add(new Part(name, value, null, null));
+        return this;
+    }
+
+    @NotNull
+    public MultipartUpload addFile(@NotNull String name, @NotNull File file) {
+        return addFile(name, file, null);
+    }
+
+    /**
+     * 添加文件
+     *
+     * @param name        表单字段名
+     * @param file        上传的文件
+     * @param contentType 文件类型，为空时使用application/octet-stream
+     */
+    @NotNull
+    public MultipartUpload addFile(@NotNull String name, @NotNull File file, @Nullable MediaType contentType) {
+        parts.add(new Part(name, null, file, contentType));
+        return this;
+    }
+
+    /**
+     * 待上传的文件
+     */
+    @NotNull
+    public List<File> files() {
+        List<File> files = new ArrayList<>();
+        for (Part part : parts) {
+            if (part.file != null)
+                files.add(part.file);
+        }
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * 创建请求体
+     *
+     * @param id                 任务id，单个文件的进度分发给该任务的回调
+     * @param url                上传地址
+     * @param throttle           单个文件的进度节流，与整批进度使用相同的节流
+     * @param estimator          单个文件的速度估算，与整批进度使用相同的估算
+     * @param fileGlues          不为空时统计单个文件的进度，并将每个文件的进度纽带添加到其中，任务结束时用于分发最新的进度
+     */
+    @NotNull
+    RequestBody createBody(@NotNull String id, @NotNull String url, @NotNull ProgressThrottle throttle, @NotNull SpeedEstimator estimator, @Nullable List<PrgCallbackGlue> fileGlues) {
+        if (parts.isEmpty())
+            throw new IllegalStateException("MultipartUpload must have at least one part.");
+        MultipartBody.Builder builder = new MultipartBody.Builder().setType(type);
+        for (Part part : parts) {
+            File file = part.file;
+            if (file == null) {
+                builder.addFormDataPart(part.name, part.value);
+                continue;
+            }
+            MediaType contentType = part.contentType != null ? part.contentType : DEFAULT_FILE_TYPE;
+            PrgCallbackGlue callback = null;
+            if (fileGlues != null) {
+                callback = new PrgCallbackGlue(new ProgressInfo(id, url, estimator, true), throttle, file);
+                fileGlues.add(callback);
+            }
+            builder.addFormDataPart(part.name, file.getName(), new FileRequestBody(file, 0, file.length(), contentType, callback));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,21 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 多文件上传回调：{@link #onProgressChanged(ProgressInfo)}为整批的进度，
+ * {@link #onFileProgressChanged(File, ProgressInfo)}为单个文件的进度
+ */
+public interface MultipartUploadCallback extends FileUploadCallback {
+
+    /**
+     * @param file     当前上传的文件
+     * @param progress 该文件的进度
+     */
+    void onFileProgressChanged(@NotNull File file, @NotNull ProgressInfo progress);
+
+}
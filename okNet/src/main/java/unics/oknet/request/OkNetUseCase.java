@@ -6,25 +6,43 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.nio.file.FileSystemException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.BufferedSink;
 import okio.Okio;
+import okio.Sink;
 import retrofit2.Call;
+import retrofit2.HttpException;
 import unics.oknet.OkNet;
 
 /**
  * Create by luochao
  * on 2023/12/26
  * <p>
- * todo 待处理问题：如何预防客户端没有调用remove导致内存泄露？进行中的任务取消支持
+ * 回调默认使用强引用持有，任务结束时自动移除；页面等生命周期较短的回调请及时调用{@link #removeCallback(ProgressCallback)}，
+ * 或者使用弱引用注册（{@link #addCallback(String, ProgressCallback, boolean)}、{@link #setWeakCallbacks(boolean)}），
+ * 回调被回收后自动移除
  */
 public class OkNetUseCase {
 
@@ -33,8 +51,45 @@ public class OkNetUseCase {
     //请求中的任务信息
     HashMap<String, ProgressInfo> runningInfo = new HashMap<>();
 
+    //请求中的任务，用于取消
+    private final ConcurrentHashMap<String, Call<ResponseBody>> runningCalls = new ConcurrentHashMap<>();
+
+    //正在执行的断点续传上传任务，用于取消
+    private final ConcurrentHashMap<String, ResumableUpload> runningUploads = new ConcurrentHashMap<>();
+
+    //正在写入的文件，用于边下载边读取
+    private final ConcurrentHashMap<String, PartialFile> partialFiles = new ConcurrentHashMap<>();
+
     private final ExecutorService executor;
 
+    //是否默认使用弱引用持有回调
+    private volatile boolean weakCallbacks;
+
+    //进度分发的执行器，为空时在网络读写线程中直接分发
+    @Nullable
+    volatile Executor progressExecutor;
+
+    //批量进度分发
+    final BatchProgressDispatcher batchProgress = new BatchProgressDispatcher();
+
+    //任务默认的进度节流
+    @NotNull
+    private volatile ProgressThrottle progressThrottle = ProgressThrottle.DEFAULT;
+
+    //任务的速度估算
+    @NotNull
+    private volatile SpeedEstimator speedEstimator = SpeedEstimator.DEFAULT;
+
+    //全局传输统计
+    final TransferMeter transferMeter = new TransferMeter();
+
+    //分片上传默认的分片大小和重试次数
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int DEFAULT_CHUNK_RETRIES = 3;
+
+    //目录同步时同时下载的最大文件数
+    private static final int SYNC_PARALLELISM = 4;
+
 
     private OkNetUseCase() {
         // CPU的数量
@@ -69,6 +124,14 @@ public class OkNetUseCase {
         return runningInfo.containsKey(id);
     }
 
+    /**
+     * 全局传输统计：累计字节数、当前总速度、进行中的任务数量
+     */
+    @NotNull
+    public TransferMeter getTransferMeter() {
+        return transferMeter;
+    }
+
     /**
      * 获取下载信息
      */
@@ -77,6 +140,40 @@ public class OkNetUseCase {
         return runningInfo.get(id);
     }
 
+    /**
+     * 取消任务，任务会以{@link IOException}结束并回调onError
+     *
+     * @param id 任务id
+     * @return 任务不存在时返回false
+     */
+    public boolean cancel(@NotNull String id) {
+        ResumableUpload upload = runningUploads.get(id);
+        if (upload != null) {
+            upload.cancel();
+            return true;
+        }
+        Call<ResponseBody> call = runningCalls.get(id);
+        if (call == null)
+            return false;
+        call.cancel();
+        return true;
+    }
+
+    /**
+     * 打开正在下载的文件进行读取，可以在下载完成前处理已下载的数据（比如播放、解析）；
+     * 读取到尚未下载的位置时阻塞等待，直到有新数据写入或者下载结束，下载失败时读取会抛出IOException
+     *
+     * @param id 任务id，仅支持{@link #downloadEnqueue}入队的任务
+     * @return 任务不存在或者已经结束时返回null；使用完毕后请关闭
+     */
+    @Nullable
+    public InputStream openReader(@NotNull String id) {
+        PartialFile partialFile = partialFiles.get(id);
+        if (partialFile == null)
+            return null;
+        return new PartialFileInputStream(partialFile);
+    }
+
     /**
      * 移除监听
      */
@@ -97,7 +194,80 @@ public class OkNetUseCase {
      * 添加监听
      */
     public void addCallback(@NotNull String id, @NotNull ProgressCallback progressCallback) {
-        callbacks.add(id, progressCallback);
+        callbacks.add(id, progressCallback, weakCallbacks);
+    }
+
+    /**
+     * 添加监听
+     *
+     * @param weak 是否使用弱引用持有回调：回调被回收后不再分发并自动移除，不需要调用{@link #removeCallback(ProgressCallback)}；
+     *             调用方需要自行持有回调（比如作为Activity的成员），匿名回调会很快被回收
+     */
+    public void addCallback(@NotNull String id, @NotNull ProgressCallback progressCallback, boolean weak) {
+        callbacks.add(id, progressCallback, weak);
+    }
+
+    /**
+     * 添加监听，并为该监听单独设置进度节流（在任务的节流之上再次节流）
+     *
+     * @param throttle 进度节流，比如进度条只需要{@code ProgressThrottle.percent(1)}
+     */
+    public void addCallback(@NotNull String id, @NotNull ProgressCallback progressCallback, @NotNull ProgressThrottle throttle) {
+        callbacks.add(id, progressCallback, weakCallbacks, throttle);
+    }
+
+    /**
+     * 设置任务默认的进度节流，默认{@link ProgressThrottle#DEFAULT}（100毫秒）；只影响之后开始的任务
+     */
+    public void setProgressThrottle(@NotNull ProgressThrottle throttle) {
+        this.progressThrottle = throttle;
+    }
+
+    /**
+     * 设置任务的速度估算方式，影响{@link ProgressInfo#speed()}和剩余时间，默认{@link SpeedEstimator#DEFAULT}；只影响之后开始的任务
+     */
+    public void setSpeedEstimator(@NotNull SpeedEstimator estimator) {
+        this.speedEstimator = estimator;
+    }
+
+    /**
+     * 设置下载、上传等任务以及{@link #addCallback(String, ProgressCallback)}是否默认使用弱引用持有回调，默认false
+     *
+     * @see #addCallback(String, ProgressCallback, boolean)
+     */
+    public void setWeakCallbacks(boolean weak) {
+        this.weakCallbacks = weak;
+    }
+
+    /**
+     * 设置进度回调的执行器，比如主线程（{@code new Handler(Looper.getMainLooper())::post}）或者单独的分发线程；
+     * 设置后网络读写线程只提交分发任务，不会等待回调执行，执行器繁忙时每个任务只保留最新的进度。
+     * 入队任务的完成、失败回调同样提交到该执行器，并且先分发尚未分发的最新进度，串行执行器（比如主线程）中结束回调总是在最后一次进度之后；
+     * 开始回调仍在调用线程中执行
+     *
+     * @param executor 为空时在网络读写线程中直接分发（默认）
+     */
+    public void setProgressExecutor(@Nullable Executor executor) {
+        this.progressExecutor = executor;
+    }
+
+    /**
+     * 添加批量进度回调：每隔[intervalMillis]一次性分发所有进度发生变化的任务，没有变化时不分发；
+     * 分发在内部的定时线程中执行，设置了{@link #setProgressExecutor(Executor)}时在该执行器中执行。
+     * 包括添加之前已经开始的任务，它们在添加后第一次进度变化时开始被分发；多文件上传中单个文件的进度不参与批量分发。
+     * 重复添加同一个回调会更新分发间隔
+     *
+     * @param intervalMillis 分发间隔，比如16（每帧）或者250
+     */
+    public void addBatchCallback(@NotNull BatchProgressCallback callback, long intervalMillis) {
+        batchProgress.add(callback, intervalMillis);
+    }
+
+    /**
+     * 移除批量进度回调
+     */
+    public void removeBatchCallback(@NotNull BatchProgressCallback callback) {
+        batchProgress.remove(callback);
     }
 
     public boolean containsCallback(@NotNull ProgressCallback callback) {
@@ -122,15 +292,32 @@ public class OkNetUseCase {
             @NotNull String url,
             @NotNull File file,
             @Nullable ProgressCallback callback) throws IOException {
+        return download(url, file, callback, false);
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param url         下载地址
+     * @param file        保存的文件
+     * @param callback    进度回调
+     * @param conditional 是否条件下载：文件已存在时携带上次保存的ETag/Last-Modified询问服务端，
+     *                    服务端返回304时直接返回原文件，不做任何修改
+     */
+    @NotNull
+    public File download(
+            @NotNull String url,
+            @NotNull File file,
+            @Nullable ProgressCallback callback,
+            boolean conditional) throws IOException {
         String id = String.valueOf(System.nanoTime());
         try {
-            if (!notifyCallbackOnlyIfRunning(id, url, callback)) {
+            if (notifyCallbackOnlyIfRunning(id, url, callback)) {
                 throw new RuntimeException("已存在相同任务");
             }
-            Call<ResponseBody> call = createCall(id, url, callback);
-            retrofit2.Response<ResponseBody> response = call.execute();
-            assert response.body() != null;
-            return writeToFile(response.body(), file);
+            Call<ResponseBody> call = createCall(id, url, conditionalHeaders(file, conditional), callback);
+            writeResponse(call.execute(), file, conditional, null);
+            return file;
         } finally {
             removeRunningCall(id);
         }
@@ -151,6 +338,20 @@ public class OkNetUseCase {
         downloadEnqueue(url, url, file, callback);
     }
 
+    /**
+     * 入队文件下载请求
+     *
+     * @param conditional 是否条件下载，see {@link #download(String, File, ProgressCallback, boolean)}
+     */
+    public void downloadEnqueue(
+            @NotNull String url,
+            @NotNull File file,
+            boolean conditional,
+            @NotNull FileDownloadCallback callback
+    ) {
+        downloadEnqueue(url, url, file, conditional, callback);
+    }
+
     /**
      * 入队下载文件请求
      *
@@ -164,40 +365,473 @@ public class OkNetUseCase {
             @NotNull String url,
             @NotNull File file,
             @NotNull FileDownloadCallback callback
+    ) {
+        downloadEnqueue(id, url, file, false, callback);
+    }
+
+    /**
+     * 入队下载文件请求
+     *
+     * @param id          任务唯一键
+     * @param url         下载地址
+     * @param file        保存的文件
+     * @param conditional 是否条件下载：服务端返回304时不修改文件，直接回调{@link FileDownloadCallback#onComplete(String, File)}
+     * @param callback    回调
+     */
+    public void downloadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            boolean conditional,
+            @NotNull FileDownloadCallback callback
+    ) {
+        downloadEnqueue(id, url, file, conditional, progressThrottle, callback);
+    }
+
+    /**
+     * 入队下载文件请求
+     *
+     * @param id          任务唯一键
+     * @param url         下载地址
+     * @param file        保存的文件
+     * @param conditional 是否条件下载
+     * @param throttle    该任务的进度节流
+     * @param callback    回调
+     * @see #downloadEnqueue(String, String, File, boolean, FileDownloadCallback)
+     */
+    public void downloadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            boolean conditional,
+            @NotNull ProgressThrottle throttle,
+            @NotNull FileDownloadCallback callback
+    ) {
+        PartialFile partialFile = new PartialFile(file);
+        enqueue(id, url, file, conditionalHeaders(file, conditional), partialFile, throttle, callback,
+                response -> writeResponse(response, file, conditional, partialFile));
+    }
+
+    /**
+     * 下载zip并解压到指定目录：边下载边解压，不保存完整的压缩包，进度为压缩包的下载进度。
+     * 该方法会阻塞直到解压完成，请在子线程中调用。
+     * 流式解压无法读取中央目录，因此不支持使用数据描述符（data descriptor）的STORED条目，遇到时抛出{@link ZipException}
+     *
+     * @param url      zip下载地址
+     * @param dir      解压目录，压缩包中的同名文件会被覆盖
+     * @param callback 进度回调
+     */
+    @NotNull
+    public File unzip(
+            @NotNull String url,
+            @NotNull File dir,
+            @Nullable ProgressCallback callback) throws IOException {
+        String id = String.valueOf(System.nanoTime());
+        try {
+            Call<ResponseBody> call = createCall(id, url, callback);
+            unzipResponse(call.execute(), dir);
+            return dir;
+        } finally {
+            removeRunningCall(id);
+        }
+    }
+
+    /**
+     * 入队zip下载解压请求
+     *
+     * @see #unzipEnqueue(String, String, File, FileDownloadCallback)
+     */
+    public void unzipEnqueue(
+            @NotNull String url,
+            @NotNull File dir,
+            @NotNull FileDownloadCallback callback
+    ) {
+        unzipEnqueue(url, url, dir, callback);
+    }
+
+    /**
+     * 入队zip下载解压请求：边下载边解压，不保存完整的压缩包
+     *
+     * @param id       任务唯一键
+     * @param url      zip下载地址
+     * @param dir      解压目录，完成时通过{@link FileDownloadCallback#onComplete(String, File)}回调该目录
+     * @param callback 回调，进度为压缩包的下载进度；不支持的条目见{@link #unzip(String, File, ProgressCallback)}
+     */
+    public void unzipEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File dir,
+            @NotNull FileDownloadCallback callback
+    ) {
+        enqueue(id, url, dir, Collections.emptyMap(), null, progressThrottle, callback, response -> unzipResponse(response, dir));
+    }
+
+    /**
+     * 入队请求
+     *
+     * @param target      结果文件（目录），完成时回调给客户端
+     * @param partialFile 不为空时支持边下载边读取
+     * @param writer      处理响应
+     */
+    private void enqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File target,
+            @NotNull Map<String, String> headers,
+            @Nullable PartialFile partialFile,
+            @NotNull ProgressThrottle throttle,
+            @NotNull FileDownloadCallback callback,
+            @NotNull ResponseWriter writer
     ) {
         try {
             if (notifyCallbackOnlyIfRunning(id, url, callback))
                 return;
-            Call<ResponseBody> call = createCall(id, url, callback);
+            PrgCallbackGlue callbackGlue = prepare(id, url, false, throttle, callback);
+            Call<ResponseBody> call = createCall(id, url, headers, callbackGlue);
+            if (partialFile != null)
+                partialFiles.put(id, partialFile);
             callback.onStart(url);
             executor.submit(() -> {
                 try {
-                    ResponseBody body = call.execute().body();
-                    assert body != null;
-                    writeToFile(body, file);
-                    CallbackHolder holder = callbacks.get(id);
-                    if (holder != null)
-                        holder.onComplete(url, file);
+                    writer.write(call.execute());
                 } catch (Exception e) {
                     e.printStackTrace();
-                    CallbackHolder holder = callbacks.get(id);
-                    if (holder != null)
-                        holder.onError(url, e);
-                } finally {
-                    removeRunningCall(id);
+                    finishTask(id, callbackGlue, e, holder -> holder.onError(url, e));
+                    return;
                 }
+                finishTask(id, callbackGlue, null, holder -> holder.onComplete(url, target));
             });
 
         } catch (Throwable e) {
             e.printStackTrace();
+            finishTask(id, null, e, holder -> holder.onError(url, e));
+        }
+    }
 
-            CallbackHolder holder = callbacks.get(id);
-            if (holder != null)
-                holder.onError(url, e);
+    /**
+     * 上传文件，文件内容作为请求体（application/octet-stream）直接上传；
+     * 该方法会阻塞直到上传完成，请在子线程中调用
+     *
+     * @param url      上传地址
+     * @param file     上传的文件
+     * @param callback 进度回调
+     * @return 服务端返回的响应内容
+     */
+    @NotNull
+    public String upload(
+            @NotNull String url,
+            @NotNull File file,
+            @Nullable ProgressCallback callback) throws IOException {
+        return upload(url, fileBody(file), callback);
+    }
+
+    /**
+     * 上传请求体，比如自行构建的{@link okhttp3.MultipartBody}；
+     * 该方法会阻塞直到上传完成，请在子线程中调用
+     *
+     * @param url      上传地址
+     * @param body     请求体
+     * @param callback 进度回调
+     * @return 服务端返回的响应内容
+     */
+    @NotNull
+    public String upload(
+            @NotNull String url,
+            @NotNull RequestBody body,
+            @Nullable ProgressCallback callback) throws IOException {
+        String id = String.valueOf(System.nanoTime());
+        try {
+            Call<ResponseBody> call = createUploadCall(id, url, body, callback);
+            return readResponse(call.execute());
+        } finally {
+            removeRunningCall(id);
+        }
+    }
+
+    /**
+     * 多文件上传，逐个从磁盘读取文件内容写入请求；
+     * 回调为{@link MultipartUploadCallback}时同时回调单个文件的进度。
+     * 该方法会阻塞直到上传完成，请在子线程中调用
+     *
+     * @param url      上传地址
+     * @param upload   上传的文件和表单字段
+     * @param callback 进度回调，{@link ProgressCallback#onProgressChanged(ProgressInfo)}为整批的进度
+     * @return 服务端返回的响应内容
+     */
+    @NotNull
+    public String upload(
+            @NotNull String url,
+            @NotNull MultipartUpload upload,
+            @Nullable ProgressCallback callback) throws IOException {
+        String id = String.valueOf(System.nanoTime());
+        try {
+            RequestBody body = upload.createBody(id, url, progressThrottle, speedEstimator, callback instanceof MultipartUploadCallback ? new ArrayList<>() : null);
+            Call<ResponseBody> call = createUploadCall(id, url, body, callback);
+            return readResponse(call.execute());
+        } finally {
             removeRunningCall(id);
         }
     }
 
+    /**
+     * 入队文件上传请求，使用文件路径作为任务唯一键
+     *
+     * @see #uploadEnqueue(String, String, File, FileUploadCallback)
+     */
+    public void uploadEnqueue(
+            @NotNull String url,
+            @NotNull File file,
+            @NotNull FileUploadCallback callback
+    ) {
+        uploadEnqueue(file.getAbsolutePath(), url, file, callback);
+    }
+
+    /**
+     * 入队文件上传请求
+     *
+     * @param id       任务唯一键
+     * @param url      上传地址
+     * @param file     上传的文件
+     * @param callback 回调
+     */
+    public void uploadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            @NotNull FileUploadCallback callback
+    ) {
+        uploadEnqueue(id, url, fileBody(file), callback);
+    }
+
+    /**
+     * 入队多文件上传请求
+     *
+     * @param id       任务唯一键，相同任务只会执行一次，后续调用只添加回调
+     * @param url      上传地址
+     * @param upload   上传的文件和表单字段
+     * @param callback 回调，同时回调单个文件和整批的进度
+     * @see #upload(String, MultipartUpload, ProgressCallback)
+     */
+    public void uploadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull MultipartUpload upload,
+            @NotNull MultipartUploadCallback callback
+    ) {
+        uploadEnqueue(id, url, upload, progressThrottle, callback);
+    }
+
+    /**
+     * 入队多文件上传请求
+     *
+     * @param id       任务唯一键，相同任务只会执行一次，后续调用只添加回调
+     * @param url      上传地址
+     * @param upload   上传的文件和表单字段
+     * @param throttle 该任务的进度节流，同时用于单个文件的进度
+     * @param callback 回调，同时回调单个文件和整批的进度
+     */
+    public void uploadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull MultipartUpload upload,
+            @NotNull ProgressThrottle throttle,
+            @NotNull MultipartUploadCallback callback
+    ) {
+        List<PrgCallbackGlue> fileGlues = new ArrayList<>();
+        uploadEnqueue(id, url, upload.createBody(id, url, throttle, speedEstimator, fileGlues), throttle, callback, fileGlues);
+    }
+
+    /**
+     * 入队上传请求
+     *
+     * @param id       任务唯一键，相同任务只会执行一次，后续调用只添加回调
+     * @param url      上传地址
+     * @param body     请求体
+     * @param callback 回调
+     */
+    public void uploadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull RequestBody body,
+            @NotNull FileUploadCallback callback
+    ) {
+        uploadEnqueue(id, url, body, progressThrottle, callback);
+    }
+
+    /**
+     * 入队上传请求
+     *
+     * @param id       任务唯一键，相同任务只会执行一次，后续调用只添加回调
+     * @param url      上传地址
+     * @param body     请求体
+     * @param throttle 该任务的进度节流
+     * @param callback 回调
+     */
+    public void uploadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull RequestBody body,
+            @NotNull ProgressThrottle throttle,
+            @NotNull FileUploadCallback callback
+    ) {
+        uploadEnqueue(id, url, body, throttle, callback, Collections.emptyList());
+    }
+
+    /**
+     * @param fileGlues 多文件上传中每个文件的进度纽带，任务结束时分发其最新的进度
+     */
+    private void uploadEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull RequestBody body,
+            @NotNull ProgressThrottle throttle,
+            @NotNull FileUploadCallback callback,
+            @NotNull List<PrgCallbackGlue> fileGlues
+    ) {
+        try {
+            if (notifyCallbackOnlyIfRunning(id, url, callback))
+                return;
+            PrgCallbackGlue callbackGlue = prepare(id, url, true, throttle, callback);
+            callbackGlue.setParts(fileGlues);
+            Call<ResponseBody> call = createUploadCall(id, url, body, callbackGlue);
+            callback.onStart(url);
+            executor.submit(() -> {
+                String response;
+                try {
+                    response = readResponse(call.execute());
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    finishTask(id, callbackGlue, e, holder -> holder.onError(url, e));
+                    return;
+                }
+                finishTask(id, callbackGlue, null, holder -> holder.onComplete(url, response));
+            });
+
+        } catch (Throwable e) {
+            e.printStackTrace();
+            finishTask(id, null, e, holder -> holder.onError(url, e));
+        }
+    }
+
+    /**
+     * 可断点续传的分片上传，分片大小默认1M，单个分片失败时最多重试3次
+     *
+     * @see #uploadResumable(String, String, File, int, int, ProgressCallback)
+     */
+    @NotNull
+    public String uploadResumable(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            @Nullable ProgressCallback callback) throws IOException {
+        return uploadResumable(id, url, file, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_RETRIES, callback);
+    }
+
+    /**
+     * 可断点续传的分片上传：文件按分片依次上传，每个分片确认后记录进度，失败或者进程重启后使用相同的任务id再次上传时，
+     * 从服务端已确认的位置继续，已确认的分片不会重复上传。与服务端的约定见{@link ResumableUpload}；
+     * 该方法会阻塞直到上传完成，请在子线程中调用
+     *
+     * @param id         任务唯一键，用于关联上传记录；相同任务正在执行时抛出{@link IllegalStateException}
+     * @param url        上传地址
+     * @param file       上传的文件，文件发生变化时重新上传
+     * @param chunkSize  分片大小（字节）
+     * @param maxRetries 单个分片失败时的最大重试次数
+     * @param callback   进度回调
+     * @return 服务端返回的最后一个分片的响应内容
+     */
+    @NotNull
+    public String uploadResumable(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            int chunkSize,
+            int maxRetries,
+            @Nullable ProgressCallback callback) throws IOException {
+        //同一任务同时上传会使用同一份上传记录，并且结束时会移除另一个任务的状态
+        if (isRunning(id))
+            throw new IllegalStateException("已存在相同任务:" + id);
+        try {
+            PrgCallbackGlue callbackGlue = prepare(id, url, true, progressThrottle, callback);
+            ResumableUpload upload = new ResumableUpload(id, url, file, chunkSize, maxRetries, callbackGlue);
+            runningUploads.put(id, upload);
+            return upload.execute();
+        } finally {
+            removeRunningCall(id);
+        }
+    }
+
+    /**
+     * 入队可断点续传的分片上传请求，使用文件路径作为任务唯一键
+     *
+     * @see #uploadResumableEnqueue(String, String, File, int, int, FileUploadCallback)
+     */
+    public void uploadResumableEnqueue(
+            @NotNull String url,
+            @NotNull File file,
+            @NotNull FileUploadCallback callback
+    ) {
+        uploadResumableEnqueue(file.getAbsolutePath(), url, file, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_RETRIES, callback);
+    }
+
+    /**
+     * 入队可断点续传的分片上传请求
+     *
+     * @param id         任务唯一键，相同任务只会执行一次，后续调用只添加回调；同时用于关联上传记录
+     * @param url        上传地址
+     * @param file       上传的文件
+     * @param chunkSize  分片大小（字节）
+     * @param maxRetries 单个分片失败时的最大重试次数
+     * @param callback   回调
+     * @see #uploadResumable(String, String, File, int, int, ProgressCallback)
+     */
+    public void uploadResumableEnqueue(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            int chunkSize,
+            int maxRetries,
+            @NotNull FileUploadCallback callback
+    ) {
+        try {
+            if (notifyCallbackOnlyIfRunning(id, url, callback))
+                return;
+            PrgCallbackGlue callbackGlue = prepare(id, url, true, progressThrottle, callback);
+            ResumableUpload upload = new ResumableUpload(id, url, file, chunkSize, maxRetries, callbackGlue);
+            runningUploads.put(id, upload);
+            callback.onStart(url);
+            executor.submit(() -> {
+                String response;
+                try {
+                    response = upload.execute();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    finishTask(id, callbackGlue, e, holder -> holder.onError(url, e));
+                    return;
+                }
+                finishTask(id, callbackGlue, null, holder -> holder.onComplete(url, response));
+            });
+
+        } catch (Throwable e) {
+            e.printStackTrace();
+            finishTask(id, null, e, holder -> holder.onError(url, e));
+        }
+    }
+
+    /**
+     * 按清单同步目录：只并行下载新增或者发生变化的文件，删除清单中已不存在的文件，
+     * 全部完成后整体替换目录；任意文件失败时原目录保持不变。
+     * 该方法会阻塞直到同步完成，请在子线程中调用；每次同步使用独立的下载线程（最多同时下载{@value #SYNC_PARALLELISM}个文件），
+     * 不占用下载/上传任务的线程池，因此也可以在任务回调的线程中调用
+     *
+     * @param manifest 远端目录清单
+     * @param dir      本地目录
+     */
+    @NotNull
+    public SyncResult sync(@NotNull SyncManifest manifest, @NotNull File dir) throws IOException {
+        return new DirectorySync(SYNC_PARALLELISM, manifest, dir).execute();
+    }
+
     /**
      * 如果任务已经运行，只通知回调不做任务下载
      *
@@ -209,7 +843,7 @@ public class OkNetUseCase {
         ProgressInfo info = getRunningInfo(id);
         if (info != null) {//已经存在下载任务
             if (callback != null) {//回调不为空，添加回调
-                callbacks.add(id, callback);
+                callbacks.add(id, callback, weakCallbacks);
                 callback.onProgressChanged(info);
             }
             return true;
@@ -218,37 +852,239 @@ public class OkNetUseCase {
     }
 
     private Call<ResponseBody> createCall(@NotNull String id, @NotNull String url, @Nullable ProgressCallback callback) {
-        //开始请求前保存进度信息
-        ProgressInfo progressInfo = new ProgressInfo(id, url);
+        return createCall(id, url, Collections.emptyMap(), callback);
+    }
+
+    private Call<ResponseBody> createCall(@NotNull String id, @NotNull String url, @NotNull Map<String, String> headers, @Nullable ProgressCallback callback) {
+        return createCall(id, url, headers, prepare(id, url, false, progressThrottle, callback));
+    }
+
+    private Call<ResponseBody> createCall(@NotNull String id, @NotNull String url, @NotNull Map<String, String> headers, @NotNull PrgCallbackGlue callbackGlue) {
+        CommonService service = OkNet.createApiService(CommonService.class, true);
+        Call<ResponseBody> call = headers.isEmpty() ? service.download(url, callbackGlue) : service.download(url, headers, callbackGlue);
+        runningCalls.put(id, call);
+        return call;
+    }
+
+    private Call<ResponseBody> createUploadCall(@NotNull String id, @NotNull String url, @NotNull RequestBody body, @Nullable ProgressCallback callback) {
+        return createUploadCall(id, url, body, prepare(id, url, true, progressThrottle, callback));
+    }
+
+    private Call<ResponseBody> createUploadCall(@NotNull String id, @NotNull String url, @NotNull RequestBody body, @NotNull PrgCallbackGlue callbackGlue) {
+        CommonService service = OkNet.createApiService(CommonService.class, true);
+        Call<ResponseBody> call = service.upload(url, body, callbackGlue);
+        runningCalls.put(id, call);
+        return call;
+    }
+
+    /**
+     * 开始请求前保存进度信息；没有回调时同样统计进度，用于批量回调和全局传输统计
+     *
+     * @param upload   是否是上传任务
+     * @param throttle 进度节流
+     * @return 进度纽带
+     */
+    @NotNull
+    private PrgCallbackGlue prepare(@NotNull String id, @NotNull String url, boolean upload, @NotNull ProgressThrottle throttle, @Nullable ProgressCallback callback) {
+        ProgressInfo progressInfo = new ProgressInfo(id, url, speedEstimator, upload);
         runningInfo.put(id, progressInfo);
-        if (callback != null) {
-            callbacks.add(id, callback);
-            PrgCallbackGlue callbackGlue = new PrgCallbackGlue(progressInfo);
-            return OkNet.createApiService(CommonService.class, true).download(url, callbackGlue);
-        } else {
-            return OkNet.createApiService(CommonService.class, true).download(url);
+        transferMeter.onTaskStarted(upload);
+        if (callback != null)
+            callbacks.add(id, callback, weakCallbacks);
+        return new PrgCallbackGlue(progressInfo, throttle);
+    }
+
+    @NotNull
+    private static RequestBody fileBody(@NotNull File file) {
+        return new FileRequestBody(file, 0, file.length(), MediaType.parse("application/octet-stream"));
+    }
+
+    /**
+     * 读取上传请求的响应内容
+     */
+    @NotNull
+    private static String readResponse(@NotNull retrofit2.Response<ResponseBody> response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null)
+            throw new HttpException(response);
+        try (ResponseBody closeable = body) {
+            return closeable.string();
         }
     }
 
+    @NotNull
+    private Map<String, String> conditionalHeaders(@NotNull File file, boolean conditional) {
+        if (!conditional)
+            return Collections.emptyMap();
+        return DownloadValidator.conditionalHeaders(file);
+    }
+
+    /**
+     * 将下载结果写入文件，条件下载时服务端返回304则不修改文件
+     */
+    private void writeResponse(@NotNull retrofit2.Response<ResponseBody> response, @NotNull File file, boolean conditional, @Nullable PartialFile partialFile) throws IOException {
+        if (conditional && response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            ResponseBody errorBody = response.errorBody();
+            if (errorBody != null)
+                errorBody.close();
+            //文件未修改，已有的内容全部可读
+            if (partialFile != null)
+                partialFile.onCommitted(file.length());
+            return;
+        }
+        ResponseBody body = response.body();
+        if (body == null)
+            throw new HttpException(response);
+        //开始写入前删除旧的校验信息：写入中途失败时文件不完整，不能再用旧的校验信息发起条件请求，否则服务端返回304会一直保留损坏的文件
+        DownloadValidator.invalidate(file);
+        writeToFile(body, file, partialFile);
+        //文件完整写入后才保存新的校验信息
+        if (conditional)
+            DownloadValidator.save(file, response.headers());
+    }
+
     /**
      * 移除任务
      *
      * @param id
      */
     private void removeRunningCall(@NotNull String id) {
-        callbacks.remove(id);
-        runningInfo.remove(id);
+        removeRunningCall(id, null);
     }
 
-    private File writeToFile(@NotNull ResponseBody responseBody, @NotNull File file) throws IOException {
+    /**
+     * 任务结束的回调
+     */
+    private interface FinishCallback {
+        void invoke(@NotNull CallbackHolder holder);
+    }
 
+    /**
+     * 移除任务并回调完成/失败；设置了进度执行器时，结束回调提交到执行器，并在结束回调之前分发尚未分发的最新进度
+     *
+     * @param callbackGlue 任务的进度纽带，为空表示任务还没有开始
+     * @param error        任务失败的原因
+     */
+    private void finishTask(@NotNull String id, @Nullable PrgCallbackGlue callbackGlue, @Nullable Throwable error, @NotNull FinishCallback finish) {
+        Executor executor = progressExecutor;
+        if (executor == null) {
+            try {
+                CallbackHolder holder = callbacks.get(id);
+                if (holder != null)
+                    finish.invoke(holder);
+            } finally {
+                removeRunningCall(id, error);
+            }
+            return;
+        }
+        //先取出回调再移除任务：相同id的新任务使用新的回调，不会收到本任务的结束回调
+        CallbackHolder holder = callbacks.detach(id);
+        removeRunningCall(id, error);
+        if (holder == null)
+            return;
+        Runnable task = () -> {
+            try {
+                if (callbackGlue != null)
+                    callbackGlue.flush(holder);
+                finish.invoke(holder);
+            } finally {
+                callbacks.recycle(holder);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * 移除任务
+     *
+     * @param error 任务失败的原因，会传递给边下载边读取的读取者
+     */
+    private void removeRunningCall(@NotNull String id, @Nullable Throwable error) {
+        callbacks.remove(id);
+        ProgressInfo info = runningInfo.remove(id);
+        if (info != null)
+            transferMeter.onTaskFinished(info.isUpload());
+        runningCalls.remove(id);
+        runningUploads.remove(id);
+        PartialFile partialFile = partialFiles.remove(id);
+        if (partialFile != null)
+            partialFile.finish(error);
+    }
+
+    /**
+     * @param partialFile 不为空时统计已写入文件的字节数，用于边下载边读取
+     */
+    private File writeToFile(@NotNull ResponseBody responseBody, @NotNull File file, @Nullable PartialFile partialFile) throws IOException {
         checkFile(file);
-        try (BufferedSink target = Okio.buffer(Okio.sink(file))) {
+        Sink sink = Okio.sink(file);
+        if (partialFile != null)
+            sink = partialFile.sink(sink);
+        try (BufferedSink target = Okio.buffer(sink)) {
             target.writeAll(responseBody.source());
         }
         return file;
     }
 
+    /**
+     * 边读取响应边解压到目录
+     */
+    private void unzipResponse(@NotNull retrofit2.Response<ResponseBody> response, @NotNull File dir) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null)
+            throw new HttpException(response);
+        File root = dir.getCanonicalFile();
+        if (!root.exists() && !root.mkdirs()) {
+            throw new FileSystemException("create file dir failed.");
+        }
+        String rootPath = root.getPath() + File.separator;
+        try (ZipInputStream zip = new ZipInputStream(body.byteStream())) {
+            ZipEntry entry;
+            while ((entry = nextEntry(zip)) != null) {
+                File target = new File(root, entry.getName()).getCanonicalFile();
+                //防止Zip Slip：条目路径不能超出解压目录
+                if (!target.getPath().startsWith(rootPath)) {
+                    throw new IOException("illegal zip entry:" + entry.getName());
+                }
+                if (entry.isDirectory()) {
+                    if (!target.exists() && !target.mkdirs()) {
+                        throw new FileSystemException("create file dir failed.");
+                    }
+                } else {
+                    checkFile(target);
+                    //不关闭source，避免关闭zip流；每个条目读取到末尾时返回-1
+                    try (BufferedSink sink = Okio.buffer(Okio.sink(target))) {
+                        sink.writeAll(Okio.source(zip));
+                    }
+                }
+            }
+            //读取剩余的中央目录，使进度到达100%，并且连接可以被复用
+            body.source().readAll(Okio.blackhole());
+        }
+    }
+
+    @Nullable
+    private static ZipEntry nextEntry(@NotNull ZipInputStream zip) throws IOException {
+        try {
+            return zip.getNextEntry();
+        } catch (ZipException e) {
+            ZipException exception = new ZipException("unsupported zip entry while unzipping a stream"
+                    + "(STORED entries with a data descriptor are not supported):" + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * 处理响应
+     */
+    private interface ResponseWriter {
+        void write(@NotNull retrofit2.Response<ResponseBody> response) throws IOException;
+    }
+
     private File writeToFile(@NotNull Response response, @NotNull File file) throws IOException {
         assert response.body() != null;
         checkFile(file);
@@ -0,0 +1,95 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import okio.Buffer;
+import okio.ForwardingSink;
+import okio.Sink;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 正在写入的下载文件：记录已写入文件的字节数，供{@link PartialFileInputStream}边下载边读取
+ */
+final class PartialFile {
+
+    private final File file;
+
+    //已写入文件的字节数
+    private long committed;
+    private boolean finished;
+    private Throwable error;
+    //等待数据的读取者数量，没有读取者时写入不做通知
+    private int waiters;
+
+    PartialFile(@NotNull File file) {
+        this.file = file;
+    }
+
+    @NotNull
+    File file() {
+        return file;
+    }
+
+    /**
+     * 包装写入文件的sink，统计已写入的字节数
+     */
+    @NotNull
+    Sink sink(@NotNull Sink sink) {
+        return new ForwardingSink(sink) {
+            @Override
+            public void write(@NotNull Buffer source, long byteCount) throws IOException {
+                super.write(source, byteCount);
+                onCommitted(byteCount);
+            }
+        };
+    }
+
+    synchronized void onCommitted(long byteCount) {
+        committed += byteCount;
+        if (waiters > 0)
+            notifyAll();
+    }
+
+    synchronized void finish(@Nullable Throwable error) {
+        if (finished)
+            return;
+        this.finished = true;
+        this.error = error;
+        notifyAll();
+    }
+
+    synchronized long committed() {
+        return committed;
+    }
+
+    /**
+     * 等待直到[position]之后有可读取的数据或者下载结束
+     *
+     * @return 已写入文件的字节数；下载正常结束并且没有更多数据时返回-1
+     */
+    synchronized long await(long position) throws IOException {
+        while (committed <= position && !finished) {
+            waiters++;
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for download data.");
+            } finally {
+                waiters--;
+            }
+        }
+        if (committed > position)
+            return committed;
+        if (error != null)
+            throw new IOException("download failed:" + file, error);
+        return -1;
+    }
+
+}
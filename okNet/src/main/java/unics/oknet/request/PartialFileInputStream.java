@@ -0,0 +1,74 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 边下载边读取的输入流：只读取已写入文件的数据，没有更多数据时阻塞等待，直到有新数据写入或者下载结束；
+ * 下载失败时抛出IOException
+ */
+final class PartialFileInputStream extends InputStream {
+
+    private final PartialFile partialFile;
+    private RandomAccessFile raf;
+    private long position;
+    private boolean closed;
+
+    PartialFileInputStream(@NotNull PartialFile partialFile) {
+        this.partialFile = partialFile;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (closed)
+            throw new IOException("stream closed.");
+        if (len == 0)
+            return 0;
+        long committed = partialFile.await(position);
+        if (committed < 0)
+            return -1;
+        if (raf == null)
+            raf = new RandomAccessFile(partialFile.file(), "r");
+        raf.seek(position);
+        int read = raf.read(b, off, (int) Math.min(len, committed - position));
+        if (read > 0)
+            position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+        long committed = partialFile.await(position);
+        if (committed < 0)
+            return 0;
+        long skipped = Math.min(n, committed - position);
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(partialFile.committed() - position, 0));
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (raf != null)
+            raf.close();
+    }
+}
@@ -14,5 +14,15 @@ interface PrgCallback {
      */
     void onProgress(long byteCount, long bytesHandled, long bytesTotal);
 
+    /**
+     * 网络层（解压前）的读取进度，由{@link WireProgressInterceptor}回调
+     *
+     * @param byteCount    本次大小
+     * @param bytesHandled 已处理大小
+     * @param bytesTotal   总数据大小（Content-Length），未知时为-1
+     */
+    default void onWireProgress(long byteCount, long bytesHandled, long bytesTotal) {
+    }
+
 }
 
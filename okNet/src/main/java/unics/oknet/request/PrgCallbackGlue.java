@@ -3,60 +3,159 @@ package unics.oknet.request;
 import android.os.SystemClock;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Create by luochao
  * on 2023/12/26
- * 回调纽带，将传输的进度回传到客户端（如果能找到回调），并提供限流支持{@link #dispatchInterval}
+ * 回调纽带，将传输的进度回传到客户端（如果能找到回调），并提供限流支持{@link ProgressThrottle}；
+ * 设置了{@link OkNetUseCase#setProgressExecutor}时在执行器中分发，并且只分发最新的进度
  */
 final class PrgCallbackGlue implements PrgCallback, DownloadPrgCallback, UploadPrgCallback {
 
-    //分发间隔
-    private final long dispatchInterval;
+    //节流状态
+    private final ProgressThrottle.State throttle;
 
     //待分发数据大小
     private long bytesPending;
-    //上次分发时间
-    private long lastDispatchRealtime;
     //当前进度信息
     private final ProgressInfo progressInfo;
+    //多文件上传中的单个文件，不为空时分发单个文件的进度
+    @Nullable
+    private final File part;
+    //是否已提交分发任务，未执行前的进度更新合并为一次分发
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+    //最新的进度是否还没有分发给回调
+    private volatile boolean undelivered;
+    private final Runnable dispatchTask = this::deliver;
+    //多文件上传中每个文件的进度纽带，任务结束时与整批的进度一起分发
+    private List<PrgCallbackGlue> parts = Collections.emptyList();
 
     public PrgCallbackGlue(@NotNull ProgressInfo progressInfo) {
-        this(progressInfo, 100);
+        this(progressInfo, ProgressThrottle.DEFAULT);
     }
 
     /**
      * @param interval 最小刷新间隔
      */
     public PrgCallbackGlue(@NotNull ProgressInfo progressInfo, long interval) {
+        this(progressInfo, checkInterval(interval));
+    }
+
+    /**
+     * @param throttle 进度节流
+     */
+    public PrgCallbackGlue(@NotNull ProgressInfo progressInfo, @NotNull ProgressThrottle throttle) {
+        this(progressInfo, throttle, null);
+    }
+
+    /**
+     * @param throttle 进度节流
+     * @param part     多文件上传中的单个文件
+     */
+    PrgCallbackGlue(@NotNull ProgressInfo progressInfo, @NotNull ProgressThrottle throttle, @Nullable File part) {
+        this.throttle = throttle.newState();
+        this.progressInfo = progressInfo;
+        this.part = part;
+    }
+
+    private static ProgressThrottle checkInterval(long interval) {
         if (interval <= 0)
             throw new IllegalArgumentException("minInterval must be greater than 0.");
-        this.dispatchInterval = interval;
-        this.progressInfo = progressInfo;
+        return ProgressThrottle.interval(interval);
     }
 
     ProgressInfo getProgressInfo() {
         return progressInfo;
     }
 
+    /**
+     * 设置多文件上传中每个文件的进度纽带
+     */
+    void setParts(@NotNull List<PrgCallbackGlue> parts) {
+        this.parts = parts;
+    }
+
     @Override
     public void onProgress(long byteCount, long bytesHandled, long bytesTotal) {
-        if (bytesHandled == bytesTotal || SystemClock.elapsedRealtime() - lastDispatchRealtime >= dispatchInterval) {
+        OkNetUseCase useCase = OkNetUseCase.getInstance();
+        //多文件上传中单个文件的字节数已包含在整批中
+        if (part == null)
+            useCase.transferMeter.onTransferred(progressInfo.isUpload(), byteCount);
+        long now = SystemClock.elapsedRealtime();
+        if (throttle.tryPass(now, bytesHandled, bytesTotal)) {
             //进行分发
             long pendingByteCount = bytesPending + byteCount;
             bytesPending = 0;
-            lastDispatchRealtime = SystemClock.elapsedRealtime();
-            dispatchCallback(pendingByteCount, bytesHandled, bytesTotal);
+            dispatchCallback(now, pendingByteCount, bytesHandled, bytesTotal);
         } else {
             //等待分发
             bytesPending += byteCount;
         }
     }
 
-    private void dispatchCallback(long byteCount, long bytesWritten, long bytesTotal) {
-        progressInfo.update(byteCount, bytesWritten, bytesTotal);
+    @Override
+    public void onWireProgress(long byteCount, long bytesHandled, long bytesTotal) {
+        //只记录，随下一次应用层进度一起分发
+        progressInfo.updateWire(bytesHandled, bytesTotal);
+    }
+
+    private void dispatchCallback(long now, long byteCount, long bytesWritten, long bytesTotal) {
+        progressInfo.update(now, byteCount, bytesWritten, bytesTotal);
+        undelivered = true;
+        OkNetUseCase useCase = OkNetUseCase.getInstance();
+        if (part == null)
+            useCase.batchProgress.markChanged(progressInfo);
+        Executor executor = useCase.progressExecutor;
+        if (executor == null) {
+            deliver();
+            return;
+        }
+        if (!dispatchScheduled.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(dispatchTask);
+        } catch (RejectedExecutionException e) {
+            dispatchScheduled.set(false);
+        }
+    }
+
+    /**
+     * 将当前进度分发给客户端回调
+     */
+    private void deliver() {
+        dispatchScheduled.set(false);
         CallbackHolder callback = OkNetUseCase.getInstance().callbacks.get(progressInfo.id());
-        if (callback != null) {
+        if (callback == null)
+            return;
+        deliver(callback);
+    }
+
+    /**
+     * 任务结束后在进度执行器中调用：分发尚未分发的最新进度（先分发单个文件的进度，再分发整批的进度），保证结束回调之前回调最新的进度
+     *
+     * @param callback 已结束任务的回调
+     */
+    void flush(@NotNull CallbackHolder callback) {
+        for (PrgCallbackGlue part : parts) {
+            part.flush(callback);
+        }
+        if (undelivered)
+            deliver(callback);
+    }
+
+    private void deliver(@NotNull CallbackHolder callback) {
+        undelivered = false;
+        if (part != null) {
+            callback.onFileProgressChanged(part, progressInfo);
+        } else {
             callback.onProgressChanged(progressInfo);
         }
     }
@@ -4,10 +4,13 @@ import android.os.SystemClock;
 import android.text.format.DateUtils;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Create by luochao
  * on 2023/12/26
+ * 任务进度：由网络读写线程更新，其他线程读取；更新时使用顺序锁，
+ * 单个方法返回的数据是一致的，需要同时读取多个数据时请使用{@link #snapshot(ProgressSnapshot)}
  */
 public class ProgressInfo {
 
@@ -22,30 +25,118 @@ public class ProgressInfo {
     //请求的初始url
     private final String url;
 
+    //顺序锁：奇数表示正在更新，读取前后不一致时重新读取
+    private volatile int seq;
+
     //本次变化大小、已完成大小、总大小
-    private long bytesInterval, bytesWritten, bytesTotal;
+    private volatile long bytesInterval, bytesWritten, bytesTotal;
+
+    //网络层（压缩后）的已完成大小、总大小；上传任务与应用层相同
+    private volatile long wireBytesWritten, wireBytesTotal;
 
     //开始时间
     private final long startRealtime = SystemClock.elapsedRealtime();
 
     //上一次更新进度的时间
-    private long lastUpdateRealtime = startRealtime;
+    private volatile long lastUpdateRealtime = startRealtime;
 
     //距离上一次更新的间隔时间
-    private long intervalUpdateRealtime = 0;
+    private volatile long intervalUpdateRealtime = 0;
+
+    //平滑后的速度
+    private volatile long smoothedSpeed = 0;
+
+    private final SpeedEstimator.State speedEstimator;
+
+    //是否是上传任务
+    private final boolean upload;
 
     ProgressInfo(@NotNull String id, @NotNull String url) {
+        this(id, url, SpeedEstimator.DEFAULT, false);
+    }
+
+    ProgressInfo(@NotNull String id, @NotNull String url, @NotNull SpeedEstimator speedEstimator, boolean upload) {
         this.id = id;
         this.url = url;
+        this.speedEstimator = speedEstimator.newState(startRealtime);
+        this.upload = upload;
     }
 
     void update(long byteCount, long bytesWritten, long bytesTotal) {
-        long realtime = SystemClock.elapsedRealtime();
+        update(SystemClock.elapsedRealtime(), byteCount, bytesWritten, bytesTotal);
+    }
+
+    /**
+     * @param realtime 更新时间，由调用方读取，避免重复读取时钟
+     */
+    synchronized void update(long realtime, long byteCount, long bytesWritten, long bytesTotal) {
+        long speed = speedEstimator.update(realtime, byteCount);
+        seq++;
+        this.smoothedSpeed = speed;
         this.intervalUpdateRealtime = realtime - lastUpdateRealtime;
         this.lastUpdateRealtime = realtime;
         this.bytesTotal = bytesTotal;
         this.bytesWritten = bytesWritten;
         this.bytesInterval = byteCount;
+        if (upload) {
+            //请求体在应用层与网络层之间不做转换
+            this.wireBytesWritten = bytesWritten;
+            this.wireBytesTotal = bytesTotal;
+        }
+        seq++;
+    }
+
+    /**
+     * 更新网络层的进度
+     */
+    synchronized void updateWire(long bytesWritten, long bytesTotal) {
+        seq++;
+        this.wireBytesWritten = bytesWritten;
+        this.wireBytesTotal = bytesTotal;
+        seq++;
+    }
+
+    /**
+     * 开始读取，等待正在进行的更新完成
+     */
+    private int beginRead() {
+        int current;
+        while (((current = seq) & 1) != 0) {
+            Thread.yield();
+        }
+        return current;
+    }
+
+    /**
+     * @return 读取期间没有发生更新
+     */
+    private boolean endRead(int begin) {
+        return seq == begin;
+    }
+
+    /**
+     * 上一次更新进度的时间
+     */
+    long lastUpdateRealtime() {
+        return lastUpdateRealtime;
+    }
+
+    /**
+     * 一致地读取当前进度的所有数据
+     *
+     * @param reuse 复用的快照对象，为空时创建新的对象；在回调中频繁读取时建议复用，避免每次分配
+     * @return 填充后的快照
+     */
+    @NotNull
+    public ProgressSnapshot snapshot(@Nullable ProgressSnapshot reuse) {
+        ProgressSnapshot snapshot = reuse != null ? reuse : new ProgressSnapshot();
+        int begin;
+        do {
+            begin = beginRead();
+            snapshot.set(bytesInterval, bytesWritten, bytesTotal, wireBytesWritten, wireBytesTotal,
+                    startRealtime, lastUpdateRealtime, intervalUpdateRealtime, smoothedSpeed);
+        } while (!endRead(begin));
+        return snapshot;
     }
 
     public String id() {
@@ -56,15 +147,41 @@ public class ProgressInfo {
         return this.url;
     }
 
+    /**
+     * 是否是上传任务
+     */
+    public boolean isUpload() {
+        return this.upload;
+    }
+
     /**
      * 当前完成进度
      *
-     * @return 0-100
+     * @return 0-100；应用层总大小未知（比如gzip压缩的响应体）时使用网络层的进度，都未知时返回0
      */
     public int progress() {
+        long bytesWritten, bytesTotal, wireBytesWritten, wireBytesTotal;
+        int begin;
+        do {
+            begin = beginRead();
+            bytesWritten = this.bytesWritten;
+            bytesTotal = this.bytesTotal;
+            wireBytesWritten = this.wireBytesWritten;
+            wireBytesTotal = this.wireBytesTotal;
+        } while (!endRead(begin));
+        return progress(bytesWritten, bytesTotal, wireBytesWritten, wireBytesTotal);
+    }
+
+    static int progress(long bytesWritten, long bytesTotal, long wireBytesWritten, long wireBytesTotal) {
+        if (bytesTotal <= 0 && wireBytesTotal > 0)
+            return progress(wireBytesWritten, wireBytesTotal);
+        return progress(bytesWritten, bytesTotal);
+    }
+
+    static int progress(long bytesWritten, long bytesTotal) {
         if (bytesTotal == bytesWritten)
             return 100;
-        else if (bytesWritten <= 0 || bytesTotal == 0) {
+        else if (bytesWritten <= 0 || bytesTotal <= 0) {
             return 0;
         } else if (bytesWritten >= bytesTotal) {
             return 100;
@@ -91,21 +208,82 @@ public class ProgressInfo {
         return bytesWritten;
     }
 
+    /**
+     * 网络层（压缩后）的总大小
+     *
+     * @return bytes，未知时为-1
+     */
+    public long wireTotalSize() {
+        return wireBytesTotal;
+    }
+
+    /**
+     * 网络层（压缩后）已完成大小，即实际传输的字节数
+     *
+     * @return bytes
+     */
+    public long wireCurrentSize() {
+        return wireBytesWritten;
+    }
+
+    /**
+     * 网络层的完成进度
+     *
+     * @return 0-100；总大小未知时返回0
+     */
+    public int wireProgress() {
+        long wireBytesWritten, wireBytesTotal;
+        int begin;
+        do {
+            begin = beginRead();
+            wireBytesWritten = this.wireBytesWritten;
+            wireBytesTotal = this.wireBytesTotal;
+        } while (!endRead(begin));
+        return progress(wireBytesWritten, wireBytesTotal);
+    }
+
     /**
      * 剩余大小
      *
      * @return bytes
      */
     public long remainSize() {
+        long bytesWritten, bytesTotal;
+        int begin;
+        do {
+            begin = beginRead();
+            bytesWritten = this.bytesWritten;
+            bytesTotal = this.bytesTotal;
+        } while (!endRead(begin));
         return Math.max(bytesTotal - bytesWritten, 0);
     }
 
     /**
-     * 当前下载速度
+     * 当前速度，使用{@link SpeedEstimator}平滑后的值
      *
      * @return byte/seconds
      */
     public long speed() {
+        return smoothedSpeed;
+    }
+
+    /**
+     * 最近一次更新间隔内的速度（未平滑）
+     *
+     * @return byte/seconds
+     */
+    public long intervalSpeed() {
+        long bytesInterval, intervalUpdateRealtime;
+        int begin;
+        do {
+            begin = beginRead();
+            bytesInterval = this.bytesInterval;
+            intervalUpdateRealtime = this.intervalUpdateRealtime;
+        } while (!endRead(begin));
+        return speed(bytesInterval, intervalUpdateRealtime);
+    }
+
+    static long speed(long bytesInterval, long intervalUpdateRealtime) {
         if (intervalUpdateRealtime <= 0)
             return 0;
         //*1000是将毫秒转换成秒
@@ -118,13 +296,39 @@ public class ProgressInfo {
      * @return byte/seconds
      */
     public long avgSpeed() {
-        long time = lastUpdateRealtime - startRealtime;
+        long bytesWritten, lastUpdateRealtime;
+        int begin;
+        do {
+            begin = beginRead();
+            bytesWritten = this.bytesWritten;
+            lastUpdateRealtime = this.lastUpdateRealtime;
+        } while (!endRead(begin));
+        return avgSpeed(bytesWritten, lastUpdateRealtime - startRealtime);
+    }
+
+    static long avgSpeed(long bytesWritten, long time) {
         if (time <= 0)
             return 0;
         //*1000是将毫秒转换成秒
         return (long) (bytesWritten * 1000.0 / time);
     }
 
+    /**
+     * 网络层的平均速度，即实际的带宽
+     *
+     * @return byte/seconds
+     */
+    public long wireAvgSpeed() {
+        long wireBytesWritten, lastUpdateRealtime;
+        int begin;
+        do {
+            begin = beginRead();
+            wireBytesWritten = this.wireBytesWritten;
+            lastUpdateRealtime = this.lastUpdateRealtime;
+        } while (!endRead(begin));
+        return avgSpeed(wireBytesWritten, lastUpdateRealtime - startRealtime);
+    }
+
     /**
      * 已用时间
      *
@@ -140,7 +344,18 @@ public class ProgressInfo {
      * @return 单位：毫秒
      */
     public long remainTimeMillis() {
-        long speed = speed();
+        long speed, bytesWritten, bytesTotal;
+        int begin;
+        do {
+            begin = beginRead();
+            speed = this.smoothedSpeed;
+            bytesWritten = this.bytesWritten;
+            bytesTotal = this.bytesTotal;
+        } while (!endRead(begin));
+        return remainTimeMillis(speed, bytesWritten, bytesTotal);
+    }
+
+    static long remainTimeMillis(long speed, long bytesWritten, long bytesTotal) {
         if (speed <= 0) {
             return MAX_WAITING_TIME;
         }
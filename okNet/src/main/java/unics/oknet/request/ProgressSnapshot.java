@@ -0,0 +1,147 @@
+package unics.oknet.request;
+
+import android.os.SystemClock;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 进度快照：某一时刻一致的进度数据，通过{@link ProgressInfo#snapshot(ProgressSnapshot)}获取，可以复用
+ */
+public final class ProgressSnapshot {
+
+    private long bytesInterval, bytesWritten, bytesTotal;
+    private long wireBytesWritten, wireBytesTotal;
+    private long startRealtime, lastUpdateRealtime, intervalUpdateRealtime;
+    private long smoothedSpeed;
+
+    void set(long bytesInterval, long bytesWritten, long bytesTotal, long wireBytesWritten, long wireBytesTotal,
+             long startRealtime, long lastUpdateRealtime, long intervalUpdateRealtime, long smoothedSpeed) {
+        this.bytesInterval = bytesInterval;
+        this.bytesWritten = bytesWritten;
+        this.bytesTotal = bytesTotal;
+        this.wireBytesWritten = wireBytesWritten;
+        this.wireBytesTotal = wireBytesTotal;
+        this.startRealtime = startRealtime;
+        this.lastUpdateRealtime = lastUpdateRealtime;
+        this.intervalUpdateRealtime = intervalUpdateRealtime;
+        this.smoothedSpeed = smoothedSpeed;
+    }
+
+    /**
+     * @return 0-100
+     * @see ProgressInfo#progress()
+     */
+    public int progress() {
+        return ProgressInfo.progress(bytesWritten, bytesTotal, wireBytesWritten, wireBytesTotal);
+    }
+
+    /**
+     * 总大小
+     *
+     * @return bytes
+     */
+    public long totalSize() {
+        return bytesTotal;
+    }
+
+    /**
+     * 已完成大小
+     *
+     * @return bytes
+     */
+    public long currentSize() {
+        return bytesWritten;
+    }
+
+    /**
+     * 网络层（压缩后）的总大小
+     *
+     * @return bytes，未知时为-1
+     * @see ProgressInfo#wireTotalSize()
+     */
+    public long wireTotalSize() {
+        return wireBytesTotal;
+    }
+
+    /**
+     * 网络层（压缩后）已完成大小
+     *
+     * @return bytes
+     */
+    public long wireCurrentSize() {
+        return wireBytesWritten;
+    }
+
+    /**
+     * 网络层的完成进度
+     *
+     * @return 0-100
+     */
+    public int wireProgress() {
+        return ProgressInfo.progress(wireBytesWritten, wireBytesTotal);
+    }
+
+    /**
+     * 剩余大小
+     *
+     * @return bytes
+     */
+    public long remainSize() {
+        return Math.max(bytesTotal - bytesWritten, 0);
+    }
+
+    /**
+     * 快照时平滑后的速度
+     *
+     * @return byte/seconds
+     * @see ProgressInfo#speed()
+     */
+    public long speed() {
+        return smoothedSpeed;
+    }
+
+    /**
+     * 快照时最近一次更新间隔内的速度（未平滑）
+     *
+     * @return byte/seconds
+     */
+    public long intervalSpeed() {
+        return ProgressInfo.speed(bytesInterval, intervalUpdateRealtime);
+    }
+
+    /**
+     * 平均速度
+     *
+     * @return byte/seconds
+     */
+    public long avgSpeed() {
+        return ProgressInfo.avgSpeed(bytesWritten, lastUpdateRealtime - startRealtime);
+    }
+
+    /**
+     * 截止最后一次更新的已用时间
+     *
+     * @return 单位：毫秒
+     */
+    public long usedTimeMillis() {
+        return lastUpdateRealtime - startRealtime;
+    }
+
+    /**
+     * 剩余时间
+     *
+     * @return 单位：毫秒
+     */
+    public long remainTimeMillis() {
+        return ProgressInfo.remainTimeMillis(speed(), bytesWritten, bytesTotal);
+    }
+
+    /**
+     * 最后一次更新的时间
+     *
+     * @return {@link SystemClock#elapsedRealtime()}
+     */
+    public long lastUpdateRealtime() {
+        return lastUpdateRealtime;
+    }
+}
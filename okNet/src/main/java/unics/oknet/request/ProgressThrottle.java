@@ -0,0 +1,116 @@
+package unics.oknet.request;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 进度节流：按时间间隔、字节增量、百分比步长控制进度的分发频率，设置的条件需要同时满足（为0表示不限制），
+ * 传输完成时总是分发。可以按任务设置（{@link OkNetUseCase#setProgressThrottle(ProgressThrottle)}、入队方法），
+ * 也可以按回调设置（{@link OkNetUseCase#addCallback(String, ProgressCallback, ProgressThrottle)}）
+ */
+public final class ProgressThrottle {
+
+    /**
+     * 不节流
+     */
+    public static final ProgressThrottle NONE = new ProgressThrottle(0, 0, 0);
+
+    /**
+     * 默认节流：间隔100毫秒
+     */
+    public static final ProgressThrottle DEFAULT = new ProgressThrottle(100, 0, 0);
+
+    private final long intervalMillis;
+    private final long minBytes;
+    private final int percentStep;
+
+    /**
+     * @param intervalMillis 最小时间间隔（毫秒）
+     * @param minBytes       最小字节增量
+     * @param percentStep    最小百分比步长（0-100），总大小未知时忽略该条件
+     */
+    public ProgressThrottle(long intervalMillis, long minBytes, int percentStep) {
+        if (intervalMillis < 0 || minBytes < 0)
+            throw new IllegalArgumentException("intervalMillis and minBytes must not be negative.");
+        if (percentStep < 0 || percentStep > 100)
+            throw new IllegalArgumentException("percentStep must be between 0 and 100.");
+        this.intervalMillis = intervalMillis;
+        this.minBytes = minBytes;
+        this.percentStep = percentStep;
+    }
+
+    /**
+     * 按时间间隔节流
+     */
+    public static ProgressThrottle interval(long intervalMillis) {
+        return new ProgressThrottle(intervalMillis, 0, 0);
+    }
+
+    /**
+     * 按字节增量节流
+     */
+    public static ProgressThrottle bytes(long minBytes) {
+        return new ProgressThrottle(0, minBytes, 0);
+    }
+
+    /**
+     * 按百分比步长节流
+     */
+    public static ProgressThrottle percent(int percentStep) {
+        return new ProgressThrottle(0, 0, percentStep);
+    }
+
+    public long intervalMillis() {
+        return intervalMillis;
+    }
+
+    public long minBytes() {
+        return minBytes;
+    }
+
+    public int percentStep() {
+        return percentStep;
+    }
+
+    /**
+     * 创建节流状态，每个进度流使用单独的状态
+     */
+    State newState() {
+        return new State(this);
+    }
+
+    /**
+     * 节流状态：记录上一次分发时的时间、字节数和百分比，非线程安全
+     */
+    static final class State {
+
+        private final ProgressThrottle throttle;
+        private long lastRealtime;
+        private long lastBytes;
+        private int lastPercent;
+
+        private State(ProgressThrottle throttle) {
+            this.throttle = throttle;
+        }
+
+        /**
+         * @param now 当前时间，由调用方读取，避免重复读取时钟
+         * @return 是否分发本次进度
+         */
+        boolean tryPass(long now, long bytesHandled, long bytesTotal) {
+            boolean completed = bytesHandled == bytesTotal;
+            if (!completed) {
+                if (throttle.intervalMillis > 0 && now - lastRealtime < throttle.intervalMillis)
+                    return false;
+                if (throttle.minBytes > 0 && bytesHandled - lastBytes < throttle.minBytes)
+                    return false;
+                if (throttle.percentStep > 0 && bytesTotal > 0
+                        && ProgressInfo.progress(bytesHandled, bytesTotal) - lastPercent < throttle.percentStep)
+                    return false;
+            }
+            lastRealtime = now;
+            lastBytes = bytesHandled;
+            lastPercent = ProgressInfo.progress(bytesHandled, bytesTotal);
+            return true;
+        }
+    }
+}
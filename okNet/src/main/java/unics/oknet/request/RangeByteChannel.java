@@ -0,0 +1,294 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.ResponseBody;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import unics.oknet.OkNet;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 基于Http Range请求的只读随机访问通道：按块读取远端文件，只传输实际读取到的块；
+ * 已读取的块按LRU缓存，顺序读取时一次请求预取后续的多个块。
+ * 适用于只需要读取大文件一小部分的场景，比如ZIP的中央目录、数据库的某一页。
+ * 服务端返回的数据比请求的少（合法的206响应）时只缓存完整的块，不足一块时继续请求剩余的部分。
+ * 注意：{@link SeekableByteChannel}在Android API 24才加入，低版本上不能使用该类
+ */
+public class RangeByteChannel implements SeekableByteChannel {
+
+    private final String url;
+    //块大小
+    private final int blockSize;
+    //顺序读取时额外预取的块数量
+    private final int prefetchBlocks;
+    //块缓存，按访问顺序淘汰
+    private final LinkedHashMap<Long, byte[]> blocks;
+
+    private long position;
+    //远端文件大小，-1表示未知
+    private long size = -1;
+    //上一次读取的结束位置，用于判断是否是顺序读取
+    private long lastReadEnd = -1;
+    //已传输的字节数
+    private long bytesTransferred;
+    private boolean open = true;
+
+    public RangeByteChannel(@NotNull String url) {
+        this(url, 16 * 1024, 64, 8);
+    }
+
+    /**
+     * @param url            远端文件地址，服务端必须支持Range请求
+     * @param blockSize      块大小
+     * @param maxBlocks      最多缓存的块数量
+     * @param prefetchBlocks 顺序读取时额外预取的块数量，0表示不预取
+     */
+    public RangeByteChannel(@NotNull String url, int blockSize, int maxBlocks, int prefetchBlocks) {
+        if (blockSize <= 0 || maxBlocks <= 0 || prefetchBlocks < 0)
+            throw new IllegalArgumentException("blockSize and maxBlocks must be greater than 0,prefetchBlocks must not be negative.");
+        this.url = url;
+        this.blockSize = blockSize;
+        this.prefetchBlocks = Math.min(prefetchBlocks, maxBlocks - 1);
+        this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxBlocks;
+            }
+        };
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (!dst.hasRemaining())
+            return 0;
+        boolean sequential = position == lastReadEnd;
+        int read = 0;
+        while (dst.hasRemaining()) {
+            long index = position / blockSize;
+            byte[] block = block(index, sequential);
+            int offset = (int) (position - index * blockSize);
+            if (block == null || offset >= block.length)
+                break;
+            int count = Math.min(dst.remaining(), block.length - offset);
+            dst.put(block, offset, count);
+            position += count;
+            read += count;
+        }
+        lastReadEnd = position;
+        return read == 0 ? -1 : read;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0)
+            throw new IllegalArgumentException("position must not be negative.");
+        this.position = newPosition;
+        return this;
+    }
+
+    /**
+     * 远端文件大小；未知时会请求第一个块获取
+     */
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        if (size < 0) {
+            block(0, false);
+            if (size < 0)
+                throw new IOException("the server did not report the content length:" + url);
+        }
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        blocks.clear();
+    }
+
+    /**
+     * 已通过网络传输的字节数
+     */
+    public synchronized long bytesTransferred() {
+        return bytesTransferred;
+    }
+
+    /**
+     * 获取块，不在缓存中时发起Range请求
+     *
+     * @return 超出文件末尾时返回null
+     */
+    @Nullable
+    private byte[] block(long index, boolean sequential) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block != null)
+            return block;
+        long start = index * blockSize;
+        if (size >= 0 && start >= size)
+            return null;
+        //顺序读取时合并请求后续未缓存的块
+        int count = 1;
+        if (sequential) {
+            while (count <= prefetchBlocks && !blocks.containsKey(index + count)) {
+                count++;
+            }
+        }
+        long end = start + (long) count * blockSize - 1;
+        if (size >= 0)
+            end = Math.min(end, size - 1);
+        byte[] bytes = fetch(start, end);
+        //返回的数据不足一块且没有到达文件末尾时，继续请求该块剩余的部分
+        while (bytes.length < blockSize && (size < 0 || start + bytes.length < size)) {
+            byte[] more = fetch(start + bytes.length, end);
+            if (more.length == 0) {
+                //没有更多数据，视为到达文件末尾
+                if (size < 0)
+                    size = start + bytes.length;
+                break;
+            }
+            byte[] merged = new byte[bytes.length + more.length];
+            System.arraycopy(bytes, 0, merged, 0, bytes.length);
+            System.arraycopy(more, 0, merged, bytes.length, more.length);
+            bytes = merged;
+        }
+        cacheBlocks(index, start, bytes);
+        return blocks.get(index);
+    }
+
+    /**
+     * 按块缓存读取到的数据：只缓存完整的块，以及文件的最后一块
+     */
+    private void cacheBlocks(long index, long start, @NotNull byte[] bytes) {
+        for (int offset = 0; offset < bytes.length; offset += blockSize) {
+            int length = Math.min(blockSize, bytes.length - offset);
+            if (length < blockSize && (size < 0 || start + offset + length < size))
+                return;
+            byte[] block = new byte[length];
+            System.arraycopy(bytes, offset, block, 0, length);
+            blocks.put(index++, block);
+        }
+    }
+
+    /**
+     * 发起Range请求
+     *
+     * @return 读取到的数据，可能比请求的少；超出文件末尾时返回空数组
+     */
+    @NotNull
+    private byte[] fetch(long start, long end) throws IOException {
+        Response<ResponseBody> response = OkNet.createApiService(CommonService.class, true)
+                .range(url, "bytes=" + start + "-" + end)
+                .execute();
+        if (response.code() == HttpURLConnection.HTTP_PARTIAL) {
+            ResponseBody body = response.body();
+            if (body == null)
+                throw new HttpException(response);
+            String contentRange = response.headers().get("Content-Range");
+            //返回的范围与请求的不一致时不能按块缓存，否则会把错误位置的数据当作该块的内容
+            if (parseRangeStart(contentRange) != start) {
+                body.close();
+                throw new IOException("unexpected Content-Range:" + contentRange + ",requested bytes=" + start + "-" + end + ",url=" + url);
+            }
+            parseTotalSize(contentRange);
+            byte[] bytes = body.bytes();
+            bytesTransferred += bytes.length;
+            return bytes;
+        } else if (response.code() == 416) {
+            //请求范围超出文件末尾
+            ResponseBody errorBody = response.errorBody();
+            if (errorBody != null)
+                errorBody.close();
+            parseTotalSize(response.headers().get("Content-Range"));
+            if (size < 0)
+                size = start;
+            return new byte[0];
+        } else {
+            ResponseBody body = response.isSuccessful() ? response.body() : response.errorBody();
+            if (body != null)
+                body.close();
+            if (response.isSuccessful())
+                throw new IOException("the server does not support range requests:" + url);
+            throw new HttpException(response);
+        }
+    }
+
+    /**
+     * 解析Content-Range的起始位置：bytes 0-1023/4096
+     *
+     * @return 无法解析时返回-1
+     */
+    private static long parseRangeStart(@Nullable String contentRange) {
+        if (contentRange == null)
+            return -1;
+        String range = contentRange.trim();
+        if (!range.startsWith("bytes "))
+            return -1;
+        int dash = range.indexOf('-');
+        if (dash < 0)
+            return -1;
+        try {
+            return Long.parseLong(range.substring("bytes ".length(), dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析Content-Range：bytes 0-1023/4096 或者 bytes *&#47;4096
+     */
+    private void parseTotalSize(@Nullable String contentRange) {
+        if (contentRange == null)
+            return;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0 || slash == contentRange.length() - 1)
+            return;
+        String total = contentRange.substring(slash + 1).trim();
+        if (!"*".equals(total)) {
+            try {
+                size = Long.parseLong(total);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open)
+            throw new ClosedChannelException();
+    }
+
+}
@@ -19,6 +19,11 @@ import okio.Sink;
  */
 class RequestProgressBody extends RequestBody {
 
+    private static final String PROFILER_TRACKER = "com.android.tools.profiler.support.network.HttpTracker$OutputStreamTracker";
+
+    //AS网络分析器是否存在：只在存在时才需要通过sink.toString()识别其监听写入
+    private static final boolean PROFILER_PRESENT = isClassPresent(PROFILER_TRACKER);
+
     private final RequestBody requestBody;
     private final UploadPrgCallback callback;
 
@@ -45,31 +50,45 @@ class RequestProgressBody extends RequestBody {
     public void writeTo(@NotNull BufferedSink sink) throws IOException {
         //如果没有回调、或者是AS拦截器监听，则直接写入
         if (callback == null || sink instanceof Buffer
-                || sink.toString().contains(
-                "com.android.tools.profiler.support.network.HttpTracker$OutputStreamTracker")) {
+                || (PROFILER_PRESENT && sink.toString().contains(PROFILER_TRACKER))) {
             requestBody.writeTo(sink);
+        } else if (requestBody instanceof FileRequestBody) {
+            //文件请求体自行统计进度，避免额外的缓冲层
+            ((FileRequestBody) requestBody).writeTo(sink, callback);
         } else {
-            BufferedSink bufferedSink = Okio.buffer(progressSink(sink));
+            //RequestBody#writeTo需要BufferedSink，缓冲之间只移动Segment，不复制数据
+            BufferedSink bufferedSink = Okio.buffer(new ProgressSink(sink, contentLength(), callback));
             requestBody.writeTo(bufferedSink);
             bufferedSink.close();
         }
     }
 
-    private Sink progressSink(Sink sink) {
-
-        return new ForwardingSink(sink) {
-            long bytesWritten = 0L;
-            long contentLength = 0L;
-
-            @Override
-            public void write(@NotNull Buffer source, long byteCount) throws IOException {
-                super.write(source, byteCount);
-                if (contentLength == 0) {
-                    contentLength = contentLength();
-                }
-                bytesWritten += byteCount;
-                callback.onProgress(byteCount, bytesWritten, contentLength);
-            }
-        };
+    private static boolean isClassPresent(@NotNull String className) {
+        try {
+            Class.forName(className, false, RequestProgressBody.class.getClassLoader());
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    private static final class ProgressSink extends ForwardingSink {
+
+        private final long contentLength;
+        private final UploadPrgCallback callback;
+        private long bytesWritten;
+
+        ProgressSink(@NotNull Sink delegate, long contentLength, @NotNull UploadPrgCallback callback) {
+            super(delegate);
+            this.contentLength = contentLength;
+            this.callback = callback;
+        }
+
+        @Override
+        public void write(@NotNull Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytesWritten += byteCount;
+            callback.onProgress(byteCount, bytesWritten, contentLength);
+        }
     }
 }
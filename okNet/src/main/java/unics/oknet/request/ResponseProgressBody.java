@@ -15,6 +15,8 @@ import okio.Source;
 /**
  * Create by luochao
  * on 2023/12/26
+ * 统计读取进度的响应体：按实际读取的字节数统计；
+ * {@link #source()}必须返回BufferedSource，因此保留一层缓冲，但缓冲之间只移动Segment，不复制数据
  */
 class ResponseProgressBody extends ResponseBody {
 
@@ -41,28 +43,32 @@ class ResponseProgressBody extends ResponseBody {
     @Override
     public BufferedSource source() {
         if (bufferedSource == null) {
-            bufferedSource = Okio.buffer(progressSource(responseBody.source()));
+            bufferedSource = Okio.buffer(new ProgressSource(responseBody.source(), contentLength(), callback));
         }
         return bufferedSource;
     }
 
-    private Source progressSource(Source source) {
+    private static final class ProgressSource extends ForwardingSource {
 
-        return new ForwardingSource(source) {
+        private final long contentLength;
+        private final DownloadPrgCallback callback;
+        private long bytesRead;
 
-            long bytesRead = 0L;
-            long contentLength = 0L;
+        ProgressSource(@NotNull Source delegate, long contentLength, @NotNull DownloadPrgCallback callback) {
+            super(delegate);
+            this.contentLength = contentLength;
+            this.callback = callback;
+        }
 
-            @Override
-            public long read(Buffer sink, long byteCount) throws IOException {
-                long readCount = super.read(sink, byteCount);
-                if (contentLength == 0) {
-                    contentLength = contentLength();
-                }
-                bytesRead += byteCount;
-                callback.onProgress(byteCount, bytesRead, contentLength);
-                return readCount;
+        @Override
+        public long read(@NotNull Buffer sink, long byteCount) throws IOException {
+            long readCount = super.read(sink, byteCount);
+            //读取结束（-1）或者没有读取到数据时不回调
+            if (readCount > 0) {
+                bytesRead += readCount;
+                callback.onProgress(readCount, bytesRead, contentLength);
             }
-        };
+            return readCount;
+        }
     }
 }
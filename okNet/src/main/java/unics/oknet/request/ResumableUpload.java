@@ -0,0 +1,310 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystemException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.ByteString;
+import retrofit2.Call;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import unics.oknet.OkNet;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 可断点续传的分片上传。与服务端的约定如下（所有请求都携带{@link #UPLOAD_ID}请求头标识同一次上传）：
+ * <ul>
+ * <li>查询进度：HEAD url，服务端在{@link #UPLOAD_OFFSET}响应头中返回已确认接收的字节数，未知的上传返回0或者404</li>
+ * <li>上传分片：PATCH url，请求头{@link #UPLOAD_OFFSET}为分片在文件中的起始位置，{@link #UPLOAD_LENGTH}为文件总大小，
+ * 请求体为分片内容；服务端在{@link #UPLOAD_OFFSET}响应头中返回新的已确认字节数，最后一个分片的响应内容作为上传结果；
+ * 起始位置与服务端不一致时服务端返回409，客户端重新查询进度</li>
+ * </ul>
+ * 每个分片确认后都会持久化上传记录，失败或者进程重启后再次上传同一任务时从服务端确认的位置继续；
+ * 服务端成功响应但确认的字节数没有增加时同样视为失败，计入重试次数；
+ * 失败后等待一段时间（随重试次数翻倍）再重新查询进度，查询失败同样计入重试次数
+ */
+final class ResumableUpload {
+
+    static final String UPLOAD_ID = "Upload-Id";
+    static final String UPLOAD_OFFSET = "Upload-Offset";
+    static final String UPLOAD_LENGTH = "Upload-Length";
+
+    private static final MediaType CHUNK_TYPE = MediaType.parse("application/offset+octet-stream");
+
+    private static final String KEY_UPLOAD_ID = "uploadId";
+    private static final String KEY_PATH = "path";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_MODIFIED = "lastModified";
+    private static final String KEY_OFFSET = "offset";
+
+    //首次重试前的等待时间，之后每次翻倍
+    private static final long RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = 8000;
+
+    private final String url;
+    private final File file;
+    private final int chunkSize;
+    private final int maxRetries;
+    @Nullable
+    private final PrgCallbackGlue callbackGlue;
+    private final File recordFile;
+    //上传记录
+    private final Properties record = new Properties();
+
+    //是否已取消，每次发起查询或者分片请求前检查
+    private volatile boolean cancelled;
+    //正在执行的请求，用于取消
+    @Nullable
+    private volatile Call<?> currentCall;
+
+    ResumableUpload(
+            @NotNull String id,
+            @NotNull String url,
+            @NotNull File file,
+            int chunkSize,
+            int maxRetries,
+            @Nullable PrgCallbackGlue callbackGlue) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be greater than 0.");
+        this.url = url;
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.maxRetries = maxRetries;
+        this.callbackGlue = callbackGlue;
+        this.recordFile = recordFile(id);
+    }
+
+    /**
+     * 上传记录文件
+     */
+    @NotNull
+    static File recordFile(@NotNull String id) {
+        File dir = new File(OkNet.getApp().getCacheDir(), "oknet_upload");
+        return new File(dir, ByteString.encodeUtf8(id).sha256().hex());
+    }
+
+    /**
+     * 取消上传：正在执行的请求会被取消，尚未发起的请求不再发起，上传以{@link IOException}结束
+     */
+    void cancel() {
+        cancelled = true;
+        Call<?> call = currentCall;
+        if (call != null)
+            call.cancel();
+        //结束重试前的等待
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * 执行上传
+     *
+     * @return 最后一个分片的响应内容
+     */
+    @NotNull
+    String execute() throws IOException {
+        if (!file.isFile())
+            throw new FileSystemException("file not found:" + file);
+        long length = file.length();
+        String uploadId = loadOrCreateUploadId(length);
+        long offset = parseOffset(record.getProperty(KEY_OFFSET), 0);
+        //是否需要先查询服务端已确认的位置：开始时以及失败后
+        boolean query = true;
+        int retries = 0;
+        while (true) {
+            try {
+                if (query) {
+                    offset = queryOffset(uploadId, offset);
+                    query = false;
+                }
+                long count = Math.min(chunkSize, length - offset);
+                Response<ResponseBody> response = createChunkCall(uploadId, offset, count, length).execute();
+                ResponseBody body = response.body();
+                if (body == null)
+                    throw new HttpException(response);
+                long confirmed = parseOffset(response.headers().get(UPLOAD_OFFSET), offset + count);
+                if (confirmed >= length) {
+                    //上传完成，删除上传记录
+                    deleteRecord();
+                    try (ResponseBody closeable = body) {
+                        return closeable.string();
+                    }
+                }
+                body.close();
+                if (confirmed <= offset)
+                    throw new IOException("the server did not advance the upload offset:" + confirmed + ",expected more than " + offset);
+                offset = confirmed;
+                retries = 0;
+                saveRecord(offset);
+            } catch (IOException | HttpException e) {
+                if (cancelled || retries++ >= maxRetries)
+                    throw e;
+                //等待后重新查询服务端确认的位置继续，查询失败同样计入重试次数
+                backoff(retries);
+                query = true;
+            }
+        }
+    }
+
+    /**
+     * 重试前等待，等待时间随重试次数翻倍；取消时立即结束
+     *
+     * @param retries 第几次重试，从1开始
+     */
+    private void backoff(int retries) throws IOException {
+        long delay = Math.min(RETRY_DELAY << Math.min(retries - 1, 4), MAX_RETRY_DELAY);
+        synchronized (this) {
+            try {
+                long deadline = System.currentTimeMillis() + delay;
+                long remaining = delay;
+                while (!cancelled && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting to retry.");
+            }
+        }
+        if (cancelled)
+            throw new IOException("Canceled");
+    }
+
+    @NotNull
+    private Call<ResponseBody> createChunkCall(@NotNull String uploadId, long offset, long count, long length) throws IOException {
+        Map<String, String> headers = new HashMap<>(4);
+        headers.put(UPLOAD_ID, uploadId);
+        headers.put(UPLOAD_OFFSET, String.valueOf(offset));
+        headers.put(UPLOAD_LENGTH, String.valueOf(length));
+        UploadPrgCallback callback = callbackGlue == null ? null : new OffsetPrgCallback(callbackGlue, offset, length);
+        return track(OkNet.createApiService(CommonService.class, true)
+                .uploadChunk(url, headers, new FileRequestBody(file, offset, count, CHUNK_TYPE), callback));
+    }
+
+    /**
+     * 记录即将执行的请求；已取消时不再发起
+     */
+    @NotNull
+    private <T> Call<T> track(@NotNull Call<T> call) throws IOException {
+        //先记录请求再检查标记，与cancel()的顺序相反，保证并发取消时请求一定会被取消
+        currentCall = call;
+        if (cancelled) {
+            call.cancel();
+            throw new IOException("Canceled");
+        }
+        return call;
+    }
+
+    /**
+     * 查询服务端已确认的字节数
+     *
+     * @param recorded 本地记录的已确认字节数，服务端没有返回进度时使用
+     */
+    private long queryOffset(@NotNull String uploadId, long recorded) throws IOException {
+        Response<Void> response = track(OkNet.createApiService(CommonService.class, true)
+                .uploadOffset(url, uploadId))
+                .execute();
+        if (response.code() == 404)
+            return 0;
+        if (!response.isSuccessful())
+            throw new HttpException(response);
+        return parseOffset(response.headers().get(UPLOAD_OFFSET), recorded);
+    }
+
+    private static long parseOffset(@Nullable String value, long defaultValue) {
+        if (value == null)
+            return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 读取上传记录；文件已变化或者没有记录时创建新的上传
+     */
+    @NotNull
+    private String loadOrCreateUploadId(long length) throws IOException {
+        if (recordFile.exists()) {
+            try (InputStream input = new FileInputStream(recordFile)) {
+                record.load(input);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            String uploadId = record.getProperty(KEY_UPLOAD_ID);
+            if (uploadId != null
+                    && file.getAbsolutePath().equals(record.getProperty(KEY_PATH))
+                    && String.valueOf(length).equals(record.getProperty(KEY_LENGTH))
+                    && String.valueOf(file.lastModified()).equals(record.getProperty(KEY_MODIFIED))) {
+                return uploadId;
+            }
+            record.clear();
+        }
+        String uploadId = UUID.randomUUID().toString();
+        record.setProperty(KEY_UPLOAD_ID, uploadId);
+        record.setProperty(KEY_PATH, file.getAbsolutePath());
+        record.setProperty(KEY_LENGTH, String.valueOf(length));
+        record.setProperty(KEY_MODIFIED, String.valueOf(file.lastModified()));
+        File parent = recordFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs())
+            throw new FileSystemException("create file dir failed.");
+        saveRecord(0);
+        return uploadId;
+    }
+
+    /**
+     * 保存上传记录
+     *
+     * @param offset 服务端已确认的字节数
+     */
+    private void saveRecord(long offset) throws IOException {
+        record.setProperty(KEY_OFFSET, String.valueOf(offset));
+        try (OutputStream output = new FileOutputStream(recordFile)) {
+            record.store(output, null);
+        }
+    }
+
+    private void deleteRecord() {
+        //noinspection ResultOfMethodCallIgnored
+        recordFile.delete();
+    }
+
+    /**
+     * 将分片内的进度转换为整个文件的进度
+     */
+    private static final class OffsetPrgCallback implements UploadPrgCallback {
+
+        private final PrgCallbackGlue callback;
+        private final long offset;
+        private final long length;
+
+        OffsetPrgCallback(@NotNull PrgCallbackGlue callback, long offset, long length) {
+            this.callback = callback;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void onProgress(long byteCount, long bytesHandled, long bytesTotal) {
+            callback.onProgress(byteCount, offset + bytesHandled, length);
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package unics.oknet.request;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 速度估算：平滑传输速度，避免{@link ProgressInfo#speed()}和剩余时间随单次间隔剧烈跳动。
+ * 支持指数加权移动平均（{@link #ewma(long)}）和滑动时间窗口（{@link #window(long)}），
+ * 通过{@link OkNetUseCase#setSpeedEstimator(SpeedEstimator)}设置
+ */
+public final class SpeedEstimator {
+
+    /**
+     * 默认：半衰期1秒的指数加权移动平均
+     */
+    public static final SpeedEstimator DEFAULT = ewma(1000);
+
+    //窗口内最多保存的样本数量
+    private static final int MAX_SAMPLES = 64;
+
+    private final boolean window;
+    private final long millis;
+
+    private SpeedEstimator(boolean window, long millis) {
+        if (millis <= 0)
+            throw new IllegalArgumentException("millis must be greater than 0.");
+        this.window = window;
+        this.millis = millis;
+    }
+
+    /**
+     * 指数加权移动平均：越新的样本权重越大，时间不均匀的样本按间隔计算权重
+     *
+     * @param halfLifeMillis 半衰期，旧样本的权重每经过该时间减半；越大越平滑，响应越慢
+     */
+    public static SpeedEstimator ewma(long halfLifeMillis) {
+        return new SpeedEstimator(false, halfLifeMillis);
+    }
+
+    /**
+     * 滑动时间窗口：速度为最近一段时间内传输的字节数除以时间
+     *
+     * @param windowMillis 窗口大小
+     */
+    public static SpeedEstimator window(long windowMillis) {
+        return new SpeedEstimator(true, windowMillis);
+    }
+
+    /**
+     * 创建估算状态，每个任务使用单独的状态
+     *
+     * @param startRealtime 任务开始时间
+     */
+    State newState(long startRealtime) {
+        return window ? new WindowState(startRealtime, millis) : new EwmaState(startRealtime, millis);
+    }
+
+    /**
+     * 估算状态，由更新进度的线程调用，非线程安全
+     */
+    static abstract class State {
+
+        /**
+         * @param realtime  本次更新的时间
+         * @param byteCount 距离上次更新传输的字节数
+         * @return 平滑后的速度（byte/seconds）
+         */
+        abstract long update(long realtime, long byteCount);
+    }
+
+    private static final class EwmaState extends State {
+
+        private final double halfLife;
+        private long lastRealtime;
+        //同一毫秒内的多次更新累积到下一次计算
+        private long pendingBytes;
+        private double speed = -1;
+
+        EwmaState(long startRealtime, long halfLifeMillis) {
+            this.lastRealtime = startRealtime;
+            this.halfLife = halfLifeMillis;
+        }
+
+        @Override
+        long update(long realtime, long byteCount) {
+            long interval = realtime - lastRealtime;
+            pendingBytes += byteCount;
+            if (interval <= 0)
+                return Math.max((long) speed, 0);
+            //*1000是将毫秒转换成秒
+            double rate = pendingBytes * 1000.0 / interval;
+            pendingBytes = 0;
+            lastRealtime = realtime;
+            if (speed < 0) {
+                speed = rate;
+            } else {
+                double weight = 1 - Math.pow(2, -interval / halfLife);
+                speed += weight * (rate - speed);
+            }
+            return (long) speed;
+        }
+    }
+
+    private static final class WindowState extends State {
+
+        private final long windowMillis;
+        //环形缓冲区：样本时间和截止该时间的累计字节数
+        private final long[] times = new long[MAX_SAMPLES];
+        private final long[] totals = new long[MAX_SAMPLES];
+        private int head;
+        private int count;
+        private long total;
+
+        WindowState(long startRealtime, long windowMillis) {
+            this.windowMillis = windowMillis;
+            times[0] = startRealtime;
+            count = 1;
+        }
+
+        @Override
+        long update(long realtime, long byteCount) {
+            total += byteCount;
+            int last = (head + count - 1) % MAX_SAMPLES;
+            if (times[last] == realtime) {
+                totals[last] = total;
+            } else {
+                if (count == MAX_SAMPLES) {
+                    head = (head + 1) % MAX_SAMPLES;
+                    count--;
+                }
+                last = (head + count) % MAX_SAMPLES;
+                times[last] = realtime;
+                totals[last] = total;
+                count++;
+            }
+            //保留窗口开始前的最后一个样本作为基准，使统计覆盖完整的窗口
+            while (count > 2 && times[(head + 1) % MAX_SAMPLES] <= realtime - windowMillis) {
+                head = (head + 1) % MAX_SAMPLES;
+                count--;
+            }
+            long interval = realtime - times[head];
+            if (interval <= 0)
+                return 0;
+            return (long) ((total - totals[head]) * 1000.0 / interval);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 目录同步清单：描述远端目录下每个文件的相对路径、大小和SHA-256，
+ * 用于{@link OkNetUseCase#sync(SyncManifest, java.io.File)}
+ */
+public final class SyncManifest {
+
+    /**
+     * 清单条目
+     */
+    public static final class Entry {
+
+        private final String path;
+        private final long size;
+        private final String sha256;
+        private final String url;
+
+        Entry(@NotNull String path, long size, @NotNull String sha256, @NotNull String url) {
+            this.path = path;
+            this.size = size;
+            this.sha256 = sha256;
+            this.url = url;
+        }
+
+        /**
+         * 相对于同步目录的路径，使用'/'分隔
+         */
+        @NotNull
+        public String path() {
+            return path;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * 文件内容的SHA-256（十六进制）
+         */
+        @NotNull
+        public String sha256() {
+            return sha256;
+        }
+
+        /**
+         * 下载地址
+         */
+        @NotNull
+        public String url() {
+            return url;
+        }
+    }
+
+    private final String baseUrl;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * @param baseUrl 文件下载的基地址，条目未指定下载地址时使用baseUrl拼接相对路径
+     */
+    public SyncManifest(@NotNull String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    @NotNull
+    public SyncManifest add(@NotNull String path, long size, @NotNull String sha256) {
+        return add(path, size, sha256, null);
+    }
+
+    /**
+     * 添加条目
+     *
+     * @param path   相对路径，不能是绝对路径，也不能包含".."
+     * @param size   文件大小
+     * @param sha256 文件内容的SHA-256（十六进制）
+     * @param url    下载地址，为空时使用baseUrl拼接path
+     */
+    @NotNull
+    public SyncManifest add(@NotNull String path, long size, @NotNull String sha256, @Nullable String url) {
+        String normalized = path.replace('\\', '/');
+        if (normalized.isEmpty() || normalized.startsWith("/")
+                || ("/" + normalized + "/").contains("/../")) {
+            throw new IllegalArgumentException("illegal sync path:" + path);
+        }
+        if (size < 0)
+            throw new IllegalArgumentException("size must not be negative.");
+        entries.add(new Entry(normalized, size, sha256.toLowerCase(), url == null ? baseUrl + normalized : url));
+        return this;
+    }
+
+    @NotNull
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+}
@@ -0,0 +1,52 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 目录同步结果
+ */
+public final class SyncResult {
+
+    private final List<String> downloaded;
+    private final List<String> deleted;
+    private final int reused;
+
+    SyncResult(@NotNull List<String> downloaded, @NotNull List<String> deleted, int reused) {
+        this.downloaded = Collections.unmodifiableList(downloaded);
+        this.deleted = Collections.unmodifiableList(deleted);
+        this.reused = reused;
+    }
+
+    /**
+     * 新增或者发生变化而重新下载的文件
+     */
+    @NotNull
+    public List<String> downloaded() {
+        return downloaded;
+    }
+
+    /**
+     * 清单中已不存在而被删除的文件
+     */
+    @NotNull
+    public List<String> deleted() {
+        return deleted;
+    }
+
+    /**
+     * 未发生变化而复用的文件数量
+     */
+    public int reused() {
+        return reused;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncResult{downloaded=" + downloaded.size() + ", deleted=" + deleted.size() + ", reused=" + reused + '}';
+    }
+}
@@ -0,0 +1,109 @@
+package unics.oknet.request;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 全局传输统计：统计{@link OkNetUseCase}中所有下载、上传任务的累计字节数、当前总速度和进行中的任务数量，
+ * 通过{@link OkNetUseCase#getTransferMeter()}获取
+ */
+public final class TransferMeter {
+
+    private final Direction download = new Direction();
+    private final Direction upload = new Direction();
+
+    TransferMeter() {
+    }
+
+    /**
+     * 启动以来累计下载的字节数
+     */
+    public long downloadedBytes() {
+        return download.bytes.get();
+    }
+
+    /**
+     * 启动以来累计上传的字节数
+     */
+    public long uploadedBytes() {
+        return upload.bytes.get();
+    }
+
+    /**
+     * 当前所有任务的总下载速度，读取时采样，两次采样间隔小于1秒时返回上次采样的结果
+     *
+     * @return byte/seconds
+     */
+    public long downloadSpeed() {
+        return download.speed();
+    }
+
+    /**
+     * 当前所有任务的总上传速度
+     *
+     * @return byte/seconds
+     * @see #downloadSpeed()
+     */
+    public long uploadSpeed() {
+        return upload.speed();
+    }
+
+    /**
+     * 进行中的下载任务数量
+     */
+    public int activeDownloads() {
+        return download.active.get();
+    }
+
+    /**
+     * 进行中的上传任务数量
+     */
+    public int activeUploads() {
+        return upload.active.get();
+    }
+
+    void onTransferred(boolean isUpload, long byteCount) {
+        if (byteCount > 0)
+            (isUpload ? upload : download).bytes.addAndGet(byteCount);
+    }
+
+    void onTaskStarted(boolean isUpload) {
+        (isUpload ? upload : download).active.incrementAndGet();
+    }
+
+    void onTaskFinished(boolean isUpload) {
+        (isUpload ? upload : download).active.decrementAndGet();
+    }
+
+    private static final class Direction {
+
+        //最小采样间隔
+        private static final long SAMPLE_INTERVAL = 1000;
+
+        //LongAdder需要API 24
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicInteger active = new AtomicInteger();
+
+        //上次采样的时间和累计字节数
+        private long sampleRealtime = SystemClock.elapsedRealtime();
+        private long sampleBytes;
+        private long speed;
+
+        synchronized long speed() {
+            long now = SystemClock.elapsedRealtime();
+            long interval = now - sampleRealtime;
+            if (interval < SAMPLE_INTERVAL)
+                return speed;
+            long current = bytes.get();
+            //*1000是将毫秒转换成秒
+            speed = (long) ((current - sampleBytes) * 1000.0 / interval);
+            sampleRealtime = now;
+            sampleBytes = current;
+            return speed;
+        }
+    }
+}
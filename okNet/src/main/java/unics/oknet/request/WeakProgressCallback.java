@@ -0,0 +1,69 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 弱引用回调：不阻止客户端回调（比如Activity、Fragment）被回收，回收后不再分发，
+ * 并由{@link CallbackList}通过引用队列自动移除
+ */
+final class WeakProgressCallback extends WeakReference<ProgressCallback>
+        implements FileDownloadCallback, MultipartUploadCallback {
+
+    WeakProgressCallback(@NotNull ProgressCallback referent, @NotNull ReferenceQueue<? super ProgressCallback> queue) {
+        super(referent, queue);
+    }
+
+    @Override
+    public void onProgressChanged(@NotNull ProgressInfo progress) {
+        ProgressCallback callback = get();
+        if (callback != null)
+            callback.onProgressChanged(progress);
+    }
+
+    @Override
+    public void onFileProgressChanged(@NotNull File file, @NotNull ProgressInfo progress) {
+        ProgressCallback callback = get();
+        if (callback instanceof MultipartUploadCallback)
+            ((MultipartUploadCallback) callback).onFileProgressChanged(file, progress);
+    }
+
+    @Override
+    public void onStart(@NotNull String url) {
+        ProgressCallback callback = get();
+        if (callback instanceof FileDownloadCallback) {
+            ((FileDownloadCallback) callback).onStart(url);
+        } else if (callback instanceof FileUploadCallback) {
+            ((FileUploadCallback) callback).onStart(url);
+        }
+    }
+
+    @Override
+    public void onComplete(@NotNull String url, @NotNull File file) {
+        ProgressCallback callback = get();
+        if (callback instanceof FileDownloadCallback)
+            ((FileDownloadCallback) callback).onComplete(url, file);
+    }
+
+    @Override
+    public void onComplete(@NotNull String url, @NotNull String response) {
+        ProgressCallback callback = get();
+        if (callback instanceof FileUploadCallback)
+            ((FileUploadCallback) callback).onComplete(url, response);
+    }
+
+    @Override
+    public void onError(@NotNull String url, @NotNull Throwable e) {
+        ProgressCallback callback = get();
+        if (callback instanceof FileDownloadCallback) {
+            ((FileDownloadCallback) callback).onError(url, e);
+        } else if (callback instanceof FileUploadCallback) {
+            ((FileUploadCallback) callback).onError(url, e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package unics.oknet.request;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Create by luochao
+ * on 2026/10/19
+ * 网络层下载进度拦截器：作为NetworkInterceptor统计解压前实际传输的字节数，
+ * 与{@link ProgressInterceptor}统计的应用层（解压后）字节数分别记录在{@link ProgressInfo}中
+ */
+public class WireProgressInterceptor implements Interceptor {
+
+    @NotNull
+    @Override
+    public Response intercept(@NotNull Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        DownloadPrgCallback callback = chain.request().tag(DownloadPrgCallback.class);
+        ResponseBody body = response.body();
+        if (callback == null || body == null)
+            return response;
+        return response.newBuilder()
+                .body(new ResponseProgressBody(body, callback::onWireProgress))
+                .build();
+    }
+
+}
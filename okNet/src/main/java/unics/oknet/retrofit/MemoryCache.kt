@@ -0,0 +1,36 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unics.oknet.retrofit
+
+/**
+ * 内存缓存：在Retrofit接口方法上使用，成功的响应（已反序列化的结果）按方法、参数、请求url和请求头缓存在内存中，
+ * 有效期内再次调用直接返回缓存，不再发起请求；适用于频繁读取的接口，比如功能开关、用户信息。
+ * 有效期内所有调用方得到的是同一个结果对象，请不要修改，建议使用不可变的数据类。
+ * 只支持返回值为`Call<T>`的方法和suspend方法；需要添加[MemoryCacheCallAdapterFactory]（[unics.oknet.OkNet]已自动添加）
+ *
+ * ```
+ * @MemoryCache(ttlSeconds = 300)
+ * @GET("config/flags")
+ * suspend fun flags(): Flags
+ * ```
+ *
+ * @param ttlSeconds 缓存有效期（秒）
+ */
+@MustBeDocumented
+@Target(AnnotationTarget.FUNCTION)
+@Retention(AnnotationRetention.RUNTIME)
+annotation class MemoryCache(val ttlSeconds: Long = 60)
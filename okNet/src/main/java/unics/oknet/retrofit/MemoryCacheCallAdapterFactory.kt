@@ -0,0 +1,222 @@
+/*
+ * Copyright  2023 ,luochao
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package unics.oknet.retrofit
+
+import android.os.SystemClock
+import okhttp3.Headers
+import okhttp3.HttpUrl
+import okhttp3.Request
+import okhttp3.ResponseBody
+import retrofit2.Call
+import retrofit2.CallAdapter
+import retrofit2.Callback
+import retrofit2.Invocation
+import retrofit2.Response
+import retrofit2.Retrofit
+import retrofit2.SkipCallbackExecutor
+import unics.oknet.logd
+import java.io.IOException
+import java.lang.reflect.Method
+import java.lang.reflect.Type
+import java.util.concurrent.Executor
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * 内存缓存的CallAdapter：为使用[MemoryCache]注解的方法缓存成功的响应，按方法、参数、请求url和请求头区分缓存，
+ * 超过有效期或者超过[maxSize]时按最近最少使用淘汰；其他方法交给后续的CallAdapter处理。
+ * 异步请求缓存命中时与网络请求一样通过[Retrofit.callbackExecutor]回调，没有设置回调执行器时在调用线程直接回调。
+ *
+ * 缓存的键取自Retrofit构建的请求，拦截器中修改的域名和请求头（比如鉴权header）不在键中：
+ * 修改域名、切换账号等会改变最终请求的情况下请调用[clear]（[unics.oknet.OkNet]修改域名和全局header时会自动清空）。
+ * 缓存命中时返回的是同一个响应对象，所有调用方共享同一个实例，请不要修改返回的结果
+ *
+ * 使用方式：`rBuilder.addCallAdapterFactory(MemoryCacheCallAdapterFactory())`
+ *
+ * @param maxSize 最大缓存数量，默认64
+ */
+class MemoryCacheCallAdapterFactory @JvmOverloads constructor(
+    private val maxSize: Int = 64
+) : CallAdapter.Factory() {
+
+    private val cache = object : LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<CacheKey, CacheEntry>?): Boolean {
+            return size > maxSize
+        }
+    }
+
+    init {
+        require(maxSize > 0) {
+            "maxSize must be greater than 0."
+        }
+    }
+
+    override fun get(returnType: Type, annotations: Array<Annotation>, retrofit: Retrofit): CallAdapter<*, *>? {
+        val memoryCache = annotations.firstOrNull { it is MemoryCache } as? MemoryCache ?: return null
+        if (getRawType(returnType) != Call::class.java)
+            return null
+        require(memoryCache.ttlSeconds > 0) {
+            "ttlSeconds of ${MemoryCache::class.java.simpleName} must be greater than 0."
+        }
+        @Suppress("UNCHECKED_CAST")
+        val delegate = retrofit.nextCallAdapter(this, returnType, annotations) as CallAdapter<Any, Call<Any>>
+        //与DefaultCallAdapterFactory一致：suspend方法等标记了SkipCallbackExecutor的方法不使用回调执行器
+        val callbackExecutor = if (annotations.any { it is SkipCallbackExecutor }) null else retrofit.callbackExecutor()
+        require(getRawType(delegate.responseType()) != ResponseBody::class.java) {
+            "${MemoryCache::class.java.simpleName} does not support ResponseBody,the body can only be read once."
+        }
+        return object : CallAdapter<Any, Call<Any>> {
+
+            override fun responseType(): Type = delegate.responseType()
+
+            override fun adapt(call: Call<Any>): Call<Any> {
+                return MemoryCacheCall(delegate.adapt(call), memoryCache.ttlSeconds * 1000, callbackExecutor)
+            }
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    fun clear() {
+        synchronized(cache) {
+            cache.clear()
+        }
+    }
+
+    /**
+     * 移除[method]的所有缓存，比如修改数据后移除对应查询接口的缓存
+     */
+    fun invalidate(method: Method) {
+        synchronized(cache) {
+            cache.keys.removeAll { it.method == method }
+        }
+    }
+
+    private fun getCache(key: CacheKey): Response<*>? {
+        synchronized(cache) {
+            val entry = cache[key] ?: return null
+            if (entry.expireRealtime > SystemClock.elapsedRealtime())
+                return entry.response
+            cache.remove(key)
+            return null
+        }
+    }
+
+    private fun putCache(key: CacheKey, response: Response<*>, ttlMillis: Long) {
+        if (!response.isSuccessful || response.body() == null)
+            return
+        synchronized(cache) {
+            cache[key] = CacheEntry(response, SystemClock.elapsedRealtime() + ttlMillis)
+        }
+    }
+
+    /**
+     * 缓存的键：接口方法、调用参数，以及请求的url和请求头；
+     * 共用同一个Factory的多个Retrofit（比如baseUrl不同）通过url区分
+     */
+    private data class CacheKey(val method: Method, val arguments: List<*>, val url: HttpUrl, val headers: Headers)
+
+    private class CacheEntry(val response: Response<*>, val expireRealtime: Long)
+
+    /**
+     * @param callbackExecutor 缓存命中时的回调执行器
+     */
+    private inner class MemoryCacheCall(
+        private val delegate: Call<Any>,
+        private val ttlMillis: Long,
+        private val callbackExecutor: Executor?
+    ) : Call<Any> {
+
+        private val executed = AtomicBoolean()
+
+        private val key: CacheKey? by lazy {
+            val request = delegate.request()
+            request.tag(Invocation::class.java)?.let {
+                CacheKey(it.method(), it.arguments(), request.url(), request.headers())
+            }
+        }
+
+        override fun execute(): Response<Any> {
+            check(executed.compareAndSet(false, true)) { "Already executed." }
+            val key = key
+            if (key != null) {
+                getCache(key)?.let {
+                    logd { "[MemoryCache] hit ${key.method.name}" }
+                    @Suppress("UNCHECKED_CAST")
+                    return it as Response<Any>
+                }
+            }
+            val response = delegate.execute()
+            if (key != null)
+                putCache(key, response, ttlMillis)
+            return response
+        }
+
+        override fun enqueue(callback: Callback<Any>) {
+            check(executed.compareAndSet(false, true)) { "Already executed." }
+            val key = key
+            if (key != null) {
+                getCache(key)?.let {
+                    logd { "[MemoryCache] hit ${key.method.name}" }
+                    @Suppress("UNCHECKED_CAST")
+                    deliverCached(callback, it as Response<Any>)
+                    return
+                }
+            }
+            delegate.enqueue(object : Callback<Any> {
+                override fun onResponse(call: Call<Any>, response: Response<Any>) {
+                    if (key != null)
+                        putCache(key, response, ttlMillis)
+                    callback.onResponse(this@MemoryCacheCall, response)
+                }
+
+                override fun onFailure(call: Call<Any>, t: Throwable) {
+                    callback.onFailure(this@MemoryCacheCall, t)
+                }
+            })
+        }
+
+        /**
+         * 回调缓存的响应；回调前已取消时与网络请求一样回调失败
+         */
+        private fun deliverCached(callback: Callback<Any>, response: Response<Any>) {
+            val deliver = Runnable {
+                if (delegate.isCanceled) {
+                    callback.onFailure(this, IOException("Canceled"))
+                } else {
+                    callback.onResponse(this, response)
+                }
+            }
+            val executor = callbackExecutor
+            if (executor == null) {
+                deliver.run()
+            } else {
+                executor.execute(deliver)
+            }
+        }
+
+        override fun isExecuted(): Boolean = executed.get()
+
+        override fun cancel() = delegate.cancel()
+
+        override fun isCanceled(): Boolean = delegate.isCanceled
+
+        override fun clone(): Call<Any> = MemoryCacheCall(delegate.clone(), ttlMillis, callbackExecutor)
+
+        override fun request(): Request = delegate.request()
+    }
+}
@@ -0,0 +1,16 @@
+package android.app;
+
+import java.io.File;
+
+/**
+ * 单元测试使用的Application：android.jar只参与编译，单元测试运行时没有Android SDK的实现
+ */
+public class Application {
+
+    public File getCacheDir() {
+        File dir = new File(System.getProperty("java.io.tmpdir"), "oknet-test-cache");
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        return dir;
+    }
+}
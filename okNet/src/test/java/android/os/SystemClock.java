@@ -0,0 +1,14 @@
+package android.os;
+
+/**
+ * 单元测试使用的SystemClock
+ */
+public final class SystemClock {
+
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000L;
+    }
+}
@@ -0,0 +1,50 @@
+package unics.oknet
+
+import android.app.Application
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import retrofit2.Retrofit
+import java.util.concurrent.TimeUnit
+
+/**
+ * 单元测试共用的服务端：[OkNet]只能初始化一次，所有测试使用同一个以该服务端为主域名的OkNet，
+ * 每个测试通过[dispatch]设置响应
+ */
+object OkNetTestServer {
+
+    @Volatile
+    var dispatch: (RecordedRequest) -> MockResponse = { MockResponse().setResponseCode(404) }
+
+    val server = MockWebServer().apply {
+        setDispatcher(object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse = OkNetTestServer.dispatch(request)
+        })
+        start()
+    }
+
+    init {
+        OkNet.setup(object : OkNet.LazyInitializer {
+            override val app: Application = Application()
+            override val baseUrl: String = server.url("/").toString()
+            override val httpCacheSize: Long = 10 * 1024 * 1024
+            override fun onSetup(oBuilder: OkHttpClient.Builder, rBuilder: Retrofit.Builder) {}
+        })
+    }
+
+    fun url(path: String): String = server.url(path).toString()
+
+    /**
+     * 按顺序取出服务端收到的请求，直到找到[path]的请求
+     */
+    fun takeRequest(path: String): RecordedRequest {
+        while (true) {
+            val request = server.takeRequest(10, TimeUnit.SECONDS)
+                ?: throw AssertionError("no request for $path")
+            if (request.path == path)
+                return request
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package unics.oknet.okhttp
+
+import okhttp3.OkHttpClient
+import okhttp3.ResponseBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.SocketPolicy
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import retrofit2.Call
+import retrofit2.http.GET
+import retrofit2.http.Url
+import unics.oknet.OkNet
+import unics.oknet.OkNetTestServer
+
+/**
+ * 缓存策略：网络请求失败时使用过期的缓存（stale-if-error），每个客户端各自后台更新缓存
+ */
+class CachePolicyTest {
+
+    interface Service {
+        @GET
+        fun get(@Url url: String): Call<ResponseBody>
+    }
+
+    init {
+        //访问OkNetTestServer完成OkNet的初始化
+        OkNetTestServer.server
+        //缓存立即过期，失败时可以使用过期60秒以内的缓存
+        OkNet.setMainCachePolicy(CachePolicy(maxAgeSeconds = 0, staleIfErrorSeconds = 60))
+    }
+
+    @After
+    fun tearDown() {
+        OkNet.setMainCachePolicy(null)
+    }
+
+    private val service = OkNet.createApiService(Service::class.java, true)
+
+    private fun get(path: String): retrofit2.Response<ResponseBody> = service.get(OkNetTestServer.url(path)).execute()
+
+    @Test
+    fun staleCacheOnServerError() {
+        OkNetTestServer.dispatch = { MockResponse().setBody("v1") }
+        assertEquals("v1", get("/stale-5xx").body()!!.string())
+
+        OkNetTestServer.dispatch = { MockResponse().setResponseCode(503) }
+        val response = get("/stale-5xx")
+        assertEquals(200, response.code())
+        assertEquals("v1", response.body()!!.string())
+    }
+
+    @Test
+    fun staleCacheOnIOException() {
+        OkNetTestServer.dispatch = { MockResponse().setBody("v1") }
+        assertEquals("v1", get("/stale-io").body()!!.string())
+
+        OkNetTestServer.dispatch = { MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST) }
+        assertEquals("v1", get("/stale-io").body()!!.string())
+    }
+
+    @Test
+    fun errorWithoutCache() {
+        OkNetTestServer.dispatch = { MockResponse().setResponseCode(503) }
+        assertEquals(503, get("/stale-none").code())
+    }
+
+    @Test
+    fun revalidateWithOwnClient() {
+        OkNet.okHttpClient
+        val first = OkHttpClient.Builder().apply { OkDomain.useOkDomain(this, OkNetTestServer.url("/")) }.build()
+        val second = OkHttpClient.Builder().apply { OkDomain.useOkDomain(this, OkNetTestServer.url("/")) }.build()
+        OkDomain.attachClient(first)
+        OkDomain.attachClient(second)
+        //每个客户端使用各自的缓存拦截器，后台更新缓存时使用自身
+        assertSame(first, first.interceptors().filterIsInstance<CachePolicy.AppInterceptor>().single().client)
+        assertSame(second, second.interceptors().filterIsInstance<CachePolicy.AppInterceptor>().single().client)
+    }
+}
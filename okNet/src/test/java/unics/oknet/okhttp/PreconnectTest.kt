@@ -0,0 +1,49 @@
+package unics.oknet.okhttp
+
+import okhttp3.Protocol
+import okhttp3.mockwebserver.MockResponse
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import unics.oknet.OkNet
+import unics.oknet.OkNetTestServer
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 连接预热：预热请求不经过拦截器，不携带全局header
+ */
+class PreconnectTest {
+
+    init {
+        OkNetTestServer.server
+        OkNetTestServer.dispatch = { MockResponse() }
+        OkNet.addMainHeader("X-Token", "secret")
+    }
+
+    @After
+    fun tearDown() {
+        OkNet.setPreconnect(false)
+        OkNet.removeMainHeader("X-Token")
+    }
+
+    @Test
+    fun skipsInterceptors() {
+        val done = CountDownLatch(1)
+        var connected: Protocol? = null
+        OkNet.setPreconnect(true, object : PreconnectListener {
+            override fun onPreconnected(baseUrl: String, protocol: Protocol?, error: IOException?) {
+                connected = protocol
+                done.countDown()
+            }
+        })
+        assertTrue(done.await(10, TimeUnit.SECONDS))
+        assertEquals(Protocol.HTTP_1_1, connected)
+        val request = OkNetTestServer.takeRequest("/")
+        assertEquals("HEAD", request.method)
+        assertNull(request.getHeader("X-Token"))
+    }
+}
@@ -0,0 +1,91 @@
+package unics.oknet.okhttp
+
+import okhttp3.MediaType
+import okhttp3.Request
+import okhttp3.RequestBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.RecordedRequest
+import okio.GzipSource
+import okio.Okio
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import unics.oknet.OkNet
+import unics.oknet.OkNetTestServer
+import unics.oknet.request.OkNetUseCase
+import unics.oknet.request.ProgressInfo
+import java.io.File
+import java.util.Collections
+import java.util.UUID
+
+/**
+ * 请求体gzip压缩：在网络层压缩，上传进度按压缩前统计，基于偏移的分片上传不压缩，其他PATCH请求正常压缩
+ */
+class RequestGzipTest {
+
+    private val requests: MutableList<RecordedRequest> = Collections.synchronizedList(mutableListOf())
+
+    init {
+        OkNetTestServer.dispatch = {
+            requests.add(it)
+            when (it.method) {
+                "HEAD" -> MockResponse().setHeader("Upload-Offset", 0)
+                "PATCH" -> MockResponse().setHeader("Upload-Offset", it.getHeader("Upload-Length")).setBody("done")
+                else -> MockResponse().setBody("done")
+            }
+        }
+        OkNet.setMainRequestGzip(0)
+    }
+
+    @After
+    fun tearDown() {
+        OkNet.setMainRequestGzip(-1)
+    }
+
+    private fun newFile(): File {
+        val file = File.createTempFile("gzip", ".txt")
+        file.writeText("compressible content ".repeat(10000))
+        return file
+    }
+
+    @Test
+    fun gzipsWithUncompressedProgress() {
+        val file = newFile()
+        var last: ProgressInfo? = null
+        OkNetUseCase.getInstance().upload(OkNetTestServer.url("/gzip"), file) { last = it }
+
+        val request = requests.single { it.method == "POST" }
+        assertEquals("gzip", request.getHeader("Content-Encoding"))
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"))
+        assertNull(request.getHeader("Content-Length"))
+        assertArrayEquals(file.readBytes(), Okio.buffer(GzipSource(request.body)).readByteArray())
+        assertEquals(file.length(), last!!.totalSize())
+        assertEquals(file.length(), last!!.currentSize())
+    }
+
+    @Test
+    fun offsetChunksAreNotGzipped() {
+        val file = newFile()
+        OkNetUseCase.getInstance().uploadResumable(UUID.randomUUID().toString(), OkNetTestServer.url("/gzip"), file, null)
+
+        val request = requests.single { it.method == "PATCH" }
+        assertNull(request.getHeader("Content-Encoding"))
+        assertArrayEquals(file.readBytes(), request.body.readByteArray())
+    }
+
+    @Test
+    fun plainPatchIsGzipped() {
+        val content = "compressible content ".repeat(1000)
+        val request = Request.Builder()
+            .url(OkNetTestServer.url("/gzip-patch"))
+            .patch(RequestBody.create(MediaType.parse("text/plain"), content))
+            .build()
+        OkNet.okHttpClient.newCall(request).execute().close()
+
+        val recorded = requests.single { it.method == "PATCH" }
+        assertEquals("gzip", recorded.getHeader("Content-Encoding"))
+        assertEquals(content, Okio.buffer(GzipSource(recorded.body)).readUtf8())
+    }
+}
@@ -0,0 +1,126 @@
+package unics.oknet.okhttp
+
+import okhttp3.Call
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 相同请求合并：后续请求获得响应的副本，发起的请求被取消或者响应体过大时后续请求各自发起
+ */
+class SingleFlightTest {
+
+    private val requests = AtomicInteger()
+    private val arrived = CountDownLatch(1)
+    private val release = CountDownLatch(1)
+
+    @Volatile
+    private var body = "shared"
+
+    //第一个请求在服务端等待，直到release；之后的请求直接响应
+    private val server = MockWebServer().apply {
+        setDispatcher(object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                val index = requests.incrementAndGet()
+                if (index == 1) {
+                    arrived.countDown()
+                    release.await(10, TimeUnit.SECONDS)
+                }
+                return MockResponse().setBody(body)
+            }
+        })
+        start()
+    }
+
+    private val executor = Executors.newCachedThreadPool()
+
+    @After
+    fun tearDown() {
+        release.countDown()
+        executor.shutdownNow()
+        server.shutdown()
+    }
+
+    private fun client(maxBodySize: Long = 1024 * 1024): OkHttpClient {
+        return OkHttpClient.Builder()
+            .addInterceptor(SingleFlightInterceptor(maxBodySize))
+            .build()
+    }
+
+    private fun newCall(client: OkHttpClient): Call {
+        return client.newCall(Request.Builder().url(server.url("/flight")).build())
+    }
+
+    private fun execute(call: Call): Future<String> {
+        return executor.submit<String> { call.execute().use { it.body()!!.string() } }
+    }
+
+    /**
+     * 发起第一个请求并等待其到达服务端，再发起相同的请求使其等待
+     */
+    private fun startPair(client: OkHttpClient): Pair<Call, Future<String>> {
+        val leader = newCall(client)
+        val leaderResult = execute(leader)
+        assertTrue(arrived.await(5, TimeUnit.SECONDS))
+        return leader to leaderResult
+    }
+
+    @Test
+    fun followerGetsCopy() {
+        val client = client()
+        val (_, leader) = startPair(client)
+        val follower = execute(newCall(client))
+        Thread.sleep(300)
+        release.countDown()
+
+        assertEquals("shared", leader.get(5, TimeUnit.SECONDS))
+        assertEquals("shared", follower.get(5, TimeUnit.SECONDS))
+        assertEquals(1, requests.get())
+    }
+
+    @Test
+    fun cancelledLeaderReleasesFollowers() {
+        val client = client()
+        val (leaderCall, leader) = startPair(client)
+        val follower = execute(newCall(client))
+        Thread.sleep(300)
+        leaderCall.cancel()
+
+        //发起的请求被取消后，后续请求自行发起而不是一起失败
+        assertEquals("shared", follower.get(5, TimeUnit.SECONDS))
+        assertEquals(2, requests.get())
+        try {
+            leader.get(5, TimeUnit.SECONDS)
+            throw AssertionError("the cancelled call should fail.")
+        } catch (e: java.util.concurrent.ExecutionException) {
+            assertTrue(e.cause is IOException)
+        }
+    }
+
+    @Test
+    fun largeBodyIsNotShared() {
+        body = "x".repeat(100)
+        val client = client(maxBodySize = 10)
+        val (_, leader) = startPair(client)
+        val follower = execute(newCall(client))
+        Thread.sleep(300)
+        release.countDown()
+
+        assertEquals(body, leader.get(5, TimeUnit.SECONDS))
+        assertEquals(body, follower.get(5, TimeUnit.SECONDS))
+        assertEquals(2, requests.get())
+    }
+}
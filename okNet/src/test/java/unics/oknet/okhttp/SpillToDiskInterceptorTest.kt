@@ -0,0 +1,92 @@
+package unics.oknet.okhttp
+
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.mockwebserver.MockResponse
+import okio.Buffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.nio.file.Files
+import kotlin.random.Random
+
+/**
+ * 大响应体落盘：超过阈值（包括长度未知时实际超过阈值）的响应体写入临时文件，关闭响应体时删除；未超过阈值的响应体保持原样
+ */
+class SpillToDiskInterceptorTest {
+
+    private val dir = Files.createTempDirectory("spill").toFile()
+    private val client = OkHttpClient.Builder()
+        .addInterceptor(SpillToDiskInterceptor(THRESHOLD, dir))
+        .build()
+
+    private fun execute(data: ByteArray, chunked: Boolean): Response {
+        OkNetTestServer.dispatch = {
+            val response = MockResponse().setHeader("Cache-Control", "no-store")
+            if (chunked) {
+                response.setChunkedBody(Buffer().write(data), 512)
+            } else {
+                response.setBody(Buffer().write(data))
+            }
+        }
+        return client.newCall(Request.Builder().url(OkNetTestServer.url("/spill")).build()).execute()
+    }
+
+    private fun spilledFiles(): List<File> = dir.listFiles()?.toList().orEmpty()
+
+    @Test
+    fun belowThresholdIsKept() {
+        val data = Random.nextBytes(THRESHOLD.toInt())
+        execute(data, false).use {
+            assertEquals(emptyList<File>(), spilledFiles())
+            assertArrayEquals(data, it.body()!!.bytes())
+        }
+    }
+
+    @Test
+    fun aboveThresholdIsSpilled() {
+        val data = Random.nextBytes(THRESHOLD.toInt() * 10)
+        val response = execute(data, false)
+        assertEquals(1, spilledFiles().size)
+        assertEquals(data.size.toLong(), response.body()!!.contentLength())
+        assertArrayEquals(data, response.body()!!.bytes())
+        //读取完成关闭响应体后删除临时文件
+        assertEquals(emptyList<File>(), spilledFiles())
+    }
+
+    @Test
+    fun unknownLengthBelowThresholdIsKept() {
+        val data = Random.nextBytes(THRESHOLD.toInt())
+        execute(data, true).use {
+            assertEquals(emptyList<File>(), spilledFiles())
+            assertEquals(-1L, it.body()!!.contentLength())
+            assertArrayEquals(data, it.body()!!.bytes())
+        }
+    }
+
+    @Test
+    fun unknownLengthAboveThresholdIsSpilled() {
+        val data = Random.nextBytes(THRESHOLD.toInt() * 10 + 1)
+        val response = execute(data, true)
+        assertEquals(1, spilledFiles().size)
+        //落盘后长度已知
+        assertEquals(data.size.toLong(), response.body()!!.contentLength())
+        assertArrayEquals(data, response.body()!!.bytes())
+        assertEquals(emptyList<File>(), spilledFiles())
+    }
+
+    @Test
+    fun closeWithoutReadingDeletesFile() {
+        val response = execute(Random.nextBytes(THRESHOLD.toInt() * 10), false)
+        assertEquals(1, spilledFiles().size)
+        response.close()
+        assertEquals(emptyList<File>(), spilledFiles())
+    }
+
+    private companion object {
+        const val THRESHOLD = 1024L
+    }
+}
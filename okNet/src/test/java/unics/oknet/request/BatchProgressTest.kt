@@ -0,0 +1,59 @@
+package unics.oknet.request
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 批量进度分发：按间隔一次性分发发生变化的任务，同一任务多次变化只分发一次
+ */
+class BatchProgressTest {
+
+    private val dispatcher = BatchProgressDispatcher()
+    private val batches: MutableList<List<String>> = Collections.synchronizedList(mutableListOf())
+    private var delivered = CountDownLatch(1)
+    private val callback = BatchProgressCallback { changed ->
+        batches.add(changed.map { it.id() }.sorted())
+        delivered.countDown()
+    }
+
+    @After
+    fun tearDown() {
+        dispatcher.remove(callback)
+    }
+
+    @Test
+    fun deliversChangedTasksOnce() {
+        val first = ProgressInfo("first", "url")
+        val second = ProgressInfo("second", "url")
+        dispatcher.add(callback, 100)
+        dispatcher.markChanged(first)
+        dispatcher.markChanged(second)
+        dispatcher.markChanged(first)
+        assertTrue(delivered.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf(listOf("first", "second")), batches.toList())
+
+        //没有变化时不分发
+        Thread.sleep(300)
+        assertEquals(1, batches.size)
+
+        delivered = CountDownLatch(1)
+        dispatcher.markChanged(second)
+        assertTrue(delivered.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf("second"), batches.last())
+    }
+
+    @Test
+    fun removedCallbackIsNotCalled() {
+        dispatcher.add(callback, 50)
+        assertTrue(dispatcher.remove(callback))
+        assertTrue(dispatcher.isEmpty())
+        dispatcher.markChanged(ProgressInfo("removed", "url"))
+        Thread.sleep(200)
+        assertTrue(batches.isEmpty())
+    }
+}
@@ -0,0 +1,183 @@
+package unics.oknet.request
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+
+/**
+ * 回调列表：按任务id索引回调，回调按类型分组分发，移除后回收持有者；弱引用回调被回收后自动移除
+ */
+class CallbackListTest {
+
+    private open class Recorder : ProgressCallback {
+        val events = mutableListOf<String>()
+
+        override fun onProgressChanged(progress: ProgressInfo) {
+            events.add("progress")
+        }
+    }
+
+    private open class DownloadRecorder : Recorder(), FileDownloadCallback {
+        override fun onStart(url: String) {
+            events.add("start")
+        }
+
+        override fun onComplete(url: String, file: File) {
+            events.add("complete:file")
+        }
+
+        override fun onError(url: String, e: Throwable) {
+            events.add("error")
+        }
+    }
+
+    private open class UploadRecorder : Recorder(), FileUploadCallback {
+        override fun onStart(url: String) {
+            events.add("start")
+        }
+
+        override fun onComplete(url: String, response: String) {
+            events.add("complete:response")
+        }
+
+        override fun onError(url: String, e: Throwable) {
+            events.add("error")
+        }
+    }
+
+    private class MultipartRecorder : UploadRecorder(), MultipartUploadCallback {
+        override fun onFileProgressChanged(file: File, progress: ProgressInfo) {
+            events.add("file")
+        }
+    }
+
+    @Test
+    fun addAndRemoveById() {
+        val list = CallbackList()
+        val callback = Recorder()
+        val holder = list.add("a", callback)
+        list.add("b", callback)
+        //重复添加返回同一个持有者，不重复添加回调
+        assertSame(holder, list.add("a", callback))
+        assertEquals(1, holder.size())
+        assertTrue(list.contains(callback))
+
+        //移除任务只移除该任务的索引
+        list.remove("a")
+        assertNull(list.get("a"))
+        assertTrue(list.contains(callback))
+        assertTrue(list.get("b")!!.contains(callback))
+        list.remove("b")
+        assertFalse(list.contains(callback))
+    }
+
+    @Test
+    fun removeCallbackFromAllTasks() {
+        val list = CallbackList()
+        val callback = Recorder()
+        val other = Recorder()
+        list.add("a", callback)
+        list.add("b", callback)
+        list.add("b", other)
+
+        list.remove(callback)
+        assertFalse(list.contains(callback))
+        //没有回调的任务被移除，还有其它回调的任务保留
+        assertNull(list.get("a"))
+        assertEquals(listOf<ProgressCallback>(other), list.get("b")!!.callbacks)
+        assertTrue(list.contains(other))
+    }
+
+    @Test
+    fun holderIsRecycled() {
+        val list = CallbackList()
+        val holder = list.add("a", Recorder())
+        list.remove("a")
+        val callback = Recorder()
+        //复用已回收的持有者，不保留之前的回调
+        assertSame(holder, list.add("b", callback))
+        assertEquals(listOf<ProgressCallback>(callback), holder.callbacks)
+    }
+
+    @Test
+    fun dispatchByType() {
+        val progress = Recorder()
+        val download = DownloadRecorder()
+        val upload = UploadRecorder()
+        val multipart = MultipartRecorder()
+        val holder = CallbackList().apply {
+            add("a", progress)
+            add("a", download)
+            add("a", upload)
+            add("a", multipart)
+        }.get("a")!!
+
+        holder.onStart("url")
+        holder.onProgressChanged(ProgressInfo("a", "url"))
+        holder.onFileProgressChanged(File("file"), ProgressInfo("a", "url"))
+        holder.onComplete("url", File("file"))
+        holder.onComplete("url", "response")
+        holder.onError("url", RuntimeException())
+
+        assertEquals(listOf("progress"), progress.events)
+        assertEquals(listOf("start", "progress", "complete:file", "error"), download.events)
+        assertEquals(listOf("start", "progress", "complete:response", "error"), upload.events)
+        assertEquals(listOf("start", "progress", "file", "complete:response", "error"), multipart.events)
+    }
+
+    @Test
+    fun weakCallback() {
+        val list = CallbackList()
+        val callback = DownloadRecorder()
+        list.add("a", callback, true)
+        //以客户端回调查找和移除，而不是弱引用包装
+        assertTrue(list.contains(callback))
+        list.get("a")!!.onStart("url")
+        assertEquals(listOf("start"), callback.events)
+
+        list.remove(callback)
+        assertFalse(list.contains(callback))
+        assertNull(list.get("a"))
+    }
+
+    @Test
+    fun collectedWeakCallbackIsRemoved() {
+        val list = CallbackList()
+        val queue = ReferenceQueue<ProgressCallback>()
+        val reference = addWeak(list, "a", queue)
+        val other = Recorder()
+        list.add("b", other)
+
+        var collected = false
+        val deadline = System.currentTimeMillis() + 10_000
+        while (!collected && System.currentTimeMillis() < deadline) {
+            System.gc()
+            collected = queue.remove(100) != null
+        }
+        assertTrue(collected)
+        assertNull(reference.get())
+        //回收后下一次操作时移除，只剩一个已回收回调的任务也被移除
+        while (list.get("a") != null && System.currentTimeMillis() < deadline) {
+            list.contains(other)
+            Thread.sleep(10)
+        }
+        assertNull(list.get("a"))
+        assertTrue(list.contains(other))
+    }
+
+    /**
+     * 在单独的方法中创建回调，方法返回后不再有强引用
+     */
+    private fun addWeak(list: CallbackList, key: String, queue: ReferenceQueue<ProgressCallback>): WeakReference<ProgressCallback> {
+        val callback = DownloadRecorder()
+        list.add(key, callback, true)
+        assertTrue(list.contains(callback))
+        return WeakReference(callback, queue)
+    }
+}
@@ -0,0 +1,73 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.SocketPolicy
+import okio.Buffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.io.IOException
+
+/**
+ * 条件下载：304时保留文件，重新下载失败时不能保留旧的校验信息
+ */
+class ConditionalDownloadTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+
+    /**
+     * 禁止OkHttp缓存，避免缓存的重新验证干扰下载自身的条件请求
+     */
+    private fun response() = MockResponse().setHeader("Cache-Control", "no-store")
+
+    @Test
+    fun notModifiedKeepsFile() {
+        val file = File.createTempFile("conditional", ".txt")
+        OkNetTestServer.dispatch = { response().setHeader("ETag", "\"v1\"").setBody("hello") }
+        useCase.download(OkNetTestServer.url("/304"), file, null, true)
+        assertEquals("hello", file.readText())
+        OkNetTestServer.takeRequest("/304")
+
+        OkNetTestServer.dispatch = {
+            if (it.getHeader("If-None-Match") == "\"v1\"") MockResponse().setResponseCode(304)
+            else response().setBody("changed")
+        }
+        useCase.download(OkNetTestServer.url("/304"), file, null, true)
+        assertEquals("\"v1\"", OkNetTestServer.takeRequest("/304").getHeader("If-None-Match"))
+        assertEquals("hello", file.readText())
+    }
+
+    @Test
+    fun failedRewriteDropsValidator() {
+        val file = File.createTempFile("conditional", ".bin")
+        OkNetTestServer.dispatch = { response().setHeader("ETag", "\"v1\"").setBody("hello") }
+        useCase.download(OkNetTestServer.url("/rewrite"), file, null, true)
+        assertTrue(DownloadValidator.validatorFile(file).exists())
+
+        //新版本下载到一半断开
+        OkNetTestServer.dispatch = {
+            response().setHeader("ETag", "\"v2\"")
+                .setBody(Buffer().write(ByteArray(256 * 1024)))
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY)
+        }
+        try {
+            useCase.download(OkNetTestServer.url("/rewrite"), file, null, true)
+            fail("the download should fail.")
+        } catch (expected: IOException) {
+        }
+        assertFalse(DownloadValidator.validatorFile(file).exists())
+
+        //下一次下载不能携带旧的校验信息，否则服务端返回304会保留损坏的文件
+        OkNetTestServer.dispatch = {
+            if (it.getHeader("If-None-Match") != null) MockResponse().setResponseCode(304)
+            else response().setHeader("ETag", "\"v3\"").setBody("world")
+        }
+        useCase.download(OkNetTestServer.url("/rewrite"), file, null, true)
+        assertEquals("world", file.readText())
+        assertTrue(DownloadValidator.validatorFile(file).exists())
+    }
+}
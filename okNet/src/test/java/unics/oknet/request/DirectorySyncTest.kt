@@ -0,0 +1,148 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okio.Buffer
+import okio.ByteString
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import unics.oknet.OkNet
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 目录同步：删除清单中不存在的文件，任意文件失败时原目录保持不变并取消其余下载，索引损坏时重新计算哈希
+ */
+class DirectorySyncTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+
+    private val files = mutableMapOf<String, String>()
+
+    init {
+        OkNetTestServer.dispatch = {
+            val content = files[it.path!!.removePrefix("/sync/")]
+            if (content == null) MockResponse().setResponseCode(404)
+            else MockResponse().setHeader("Cache-Control", "no-store").setBody(content)
+        }
+    }
+
+    private fun manifest(vararg entries: Pair<String, String>): SyncManifest {
+        val manifest = SyncManifest(OkNetTestServer.url("/sync/"))
+        for ((path, content) in entries) {
+            manifest.add(path, content.length.toLong(), ByteString.encodeUtf8(content).sha256().hex())
+        }
+        return manifest
+    }
+
+    private fun newDir(): File {
+        val dir = Files.createTempDirectory("sync").toFile()
+        return File(dir, "target")
+    }
+
+    @Test
+    fun deletesStaleFiles() {
+        val dir = newDir()
+        files["a.txt"] = "a1"
+        files["sub/b.txt"] = "b1"
+        var result = useCase.sync(manifest("a.txt" to "a1", "sub/b.txt" to "b1"), dir)
+        assertEquals(setOf("a.txt", "sub/b.txt"), result.downloaded().toSet())
+        assertEquals("b1", File(dir, "sub/b.txt").readText())
+
+        files["c.txt"] = "c1"
+        result = useCase.sync(manifest("a.txt" to "a1", "c.txt" to "c1"), dir)
+        assertEquals(listOf("c.txt"), result.downloaded())
+        assertEquals(listOf("sub/b.txt"), result.deleted())
+        assertEquals(1, result.reused())
+        assertFalse(File(dir, "sub/b.txt").exists())
+        assertEquals("a1", File(dir, "a.txt").readText())
+        assertEquals("c1", File(dir, "c.txt").readText())
+    }
+
+    @Test
+    fun failedSyncKeepsDirectory() {
+        val dir = newDir()
+        files["a.txt"] = "a1"
+        files["b.txt"] = "b1"
+        useCase.sync(manifest("a.txt" to "a1", "b.txt" to "b1"), dir)
+
+        //b.txt的内容与清单不一致，校验失败
+        files["a.txt"] = "a2"
+        files["b.txt"] = "corrupted"
+        try {
+            useCase.sync(manifest("a.txt" to "a2", "b.txt" to "b2"), dir)
+            fail("the sync should fail.")
+        } catch (expected: IOException) {
+        }
+        assertEquals("a1", File(dir, "a.txt").readText())
+        assertEquals("b1", File(dir, "b.txt").readText())
+        assertFalse(File(dir.parentFile, "target.sync").exists())
+        assertFalse(File(dir.parentFile, "target.old").exists())
+    }
+
+    @Test
+    fun recoversInterruptedPublish() {
+        val dir = newDir()
+        files["a.txt"] = "a1"
+        useCase.sync(manifest("a.txt" to "a1"), dir)
+
+        //模拟发布过程中进程退出：原目录已重命名为备份，新目录还未发布
+        val backup = File(dir.parentFile, "target.old")
+        assertTrue(dir.renameTo(backup))
+        val result = useCase.sync(manifest("a.txt" to "a1"), dir)
+        assertEquals(0, result.downloaded().size)
+        assertEquals("a1", File(dir, "a.txt").readText())
+        assertFalse(backup.exists())
+    }
+
+    @Test
+    fun corruptedIndexIsRehashed() {
+        val dir = newDir()
+        files["a.txt"] = "a1"
+        files["b.txt"] = "b1"
+        useCase.sync(manifest("a.txt" to "a1", "b.txt" to "b1"), dir)
+
+        //索引中a.txt的记录损坏，重新计算哈希后仍然复用
+        val index = File(dir, DirectorySync.INDEX_FILE)
+        index.writeText(index.readText().replace(Regex("a\\.txt=\\d+"), "a.txt=broken"))
+        val result = useCase.sync(manifest("a.txt" to "a1", "b.txt" to "b1"), dir)
+        assertEquals(0, result.downloaded().size)
+        assertEquals(2, result.reused())
+    }
+
+    @Test
+    fun failureCancelsRunningDownloads() {
+        val dir = newDir()
+        val slowArrived = CountDownLatch(1)
+        OkNetTestServer.dispatch = {
+            if (it.path == "/sync/slow.txt") {
+                slowArrived.countDown()
+                MockResponse().setHeader("Cache-Control", "no-store")
+                    .setBody(Buffer().write(ByteArray(1024)))
+                    .setBodyDelay(20, TimeUnit.SECONDS)
+            } else {
+                //较慢的下载开始后再失败
+                slowArrived.await(5, TimeUnit.SECONDS)
+                MockResponse().setResponseCode(404)
+            }
+        }
+        try {
+            useCase.sync(manifest("slow.txt" to "slow", "missing.txt" to "missing"), dir)
+            fail("the sync should fail.")
+        } catch (expected: Exception) {
+        }
+        //阻塞在socket读取中的下载不响应线程中断，需要取消请求才能停止
+        val dispatcher = OkNet.okHttpClient.dispatcher()
+        val deadline = System.currentTimeMillis() + 5000
+        while (dispatcher.runningCallsCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(20)
+        assertEquals(0, dispatcher.runningCallsCount())
+        assertFalse(File(dir.parentFile, "target.sync").exists())
+    }
+}
@@ -0,0 +1,40 @@
+package unics.oknet.request
+
+import okio.Buffer
+import okio.Okio
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.EOFException
+import java.io.File
+import kotlin.random.Random
+
+/**
+ * 文件请求体：写入文件中的指定片段并统计进度
+ */
+class FileRequestBodyTest {
+
+    @Test
+    fun writesSliceWithProgress() {
+        val bytes = Random.nextBytes(300 * 1024)
+        val file = File.createTempFile("body", ".bin")
+        file.writeBytes(bytes)
+        val body = FileRequestBody(file, 1000, 200 * 1024, null)
+
+        var handled = 0L
+        val target = Buffer()
+        //通过非Buffer的sink写入，才会统计进度
+        Okio.buffer(target as okio.Sink).use { sink ->
+            body.writeTo(sink) { _, bytesHandled, _ -> handled = bytesHandled }
+        }
+        assertEquals(200 * 1024L, handled)
+        assertArrayEquals(bytes.copyOfRange(1000, 1000 + 200 * 1024), target.readByteArray())
+    }
+
+    @Test(expected = EOFException::class)
+    fun shortFileFails() {
+        val file = File.createTempFile("body", ".bin")
+        file.writeBytes(ByteArray(100))
+        FileRequestBody(file, 50, 100, null).writeTo(Buffer())
+    }
+}
@@ -0,0 +1,95 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.util.Collections
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * 多文件上传：请求体包含所有文件和表单字段；设置了进度执行器时，每个文件最新的进度在结束回调之前分发
+ */
+class MultipartUploadTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+    private val dispatcher = Executors.newSingleThreadExecutor()
+
+    @After
+    fun tearDown() {
+        useCase.setProgressExecutor(null)
+        dispatcher.shutdown()
+    }
+
+    private fun newFile(size: Int): File {
+        val file = File.createTempFile("multipart", ".bin")
+        file.writeBytes(Random.nextBytes(size))
+        return file
+    }
+
+    @Test
+    fun fileProgressBeforeComplete() {
+        var body = ByteArray(0)
+        OkNetTestServer.dispatch = {
+            body = it.body.readByteArray()
+            MockResponse().setBody("done")
+        }
+        //执行器繁忙，进度分发会积压到任务结束之后
+        useCase.setProgressExecutor { command ->
+            dispatcher.execute {
+                Thread.sleep(20)
+                command.run()
+            }
+        }
+        val first = newFile(300 * 1024)
+        val second = newFile(200 * 1024)
+        val upload = MultipartUpload()
+            .addFormField("name", "value")
+            .addFile("first", first)
+            .addFile("second", second)
+
+        val events: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        val lastFileProgress: MutableMap<File, Long> = Collections.synchronizedMap(mutableMapOf())
+        val done = CountDownLatch(1)
+        useCase.uploadEnqueue(UUID.randomUUID().toString(), OkNetTestServer.url("/multipart"), upload, object : MultipartUploadCallback {
+            override fun onFileProgressChanged(file: File, progress: ProgressInfo) {
+                lastFileProgress[file] = progress.currentSize()
+                events.add("file:${file.name}:${progress.currentSize()}")
+            }
+
+            override fun onProgressChanged(progress: ProgressInfo) {
+                events.add("progress:${progress.currentSize()}")
+            }
+
+            override fun onStart(url: String) {}
+
+            override fun onComplete(url: String, response: String) {
+                events.add("complete")
+                done.countDown()
+            }
+
+            override fun onError(url: String, e: Throwable) {
+                events.add("error:$e")
+                done.countDown()
+            }
+        })
+        assertTrue(done.await(10, TimeUnit.SECONDS))
+        assertEquals("complete", events.last())
+        assertEquals(first.length(), lastFileProgress[first])
+        assertEquals(second.length(), lastFileProgress[second])
+        //最后一个文件的100%进度在结束回调之前分发
+        assertTrue(events.indexOf("file:${second.name}:${second.length()}") < events.indexOf("complete"))
+
+        val text = String(body, Charsets.ISO_8859_1)
+        assertTrue(text.contains("name=\"name\""))
+        assertTrue(text.contains("filename=\"${first.name}\""))
+        assertTrue(text.contains("filename=\"${second.name}\""))
+    }
+}
@@ -0,0 +1,66 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.SocketPolicy
+import okio.Buffer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.fail
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.io.IOException
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * 边下载边读取：读取到尚未下载的位置时阻塞等待，下载失败时读取抛出异常
+ */
+class PartialFileReadTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+
+    private val callback = object : FileDownloadCallback {
+        override fun onProgressChanged(progress: ProgressInfo) {}
+        override fun onStart(url: String) {}
+        override fun onComplete(url: String, file: File) {}
+        override fun onError(url: String, e: Throwable) {}
+    }
+
+    @Test
+    fun readsWhileDownloading() {
+        val bytes = Random.nextBytes(64 * 1024)
+        //限速发送，读取会追上下载的位置
+        OkNetTestServer.dispatch = {
+            MockResponse().setHeader("Cache-Control", "no-store")
+                .setBody(Buffer().write(bytes))
+                .throttleBody(8 * 1024, 50, TimeUnit.MILLISECONDS)
+        }
+        val id = UUID.randomUUID().toString()
+        useCase.downloadEnqueue(id, OkNetTestServer.url("/partial"), File.createTempFile("partial", ".bin"), callback)
+        val reader = useCase.openReader(id)
+        assertNotNull(reader)
+        val read = reader!!.use { it.readBytes() }
+        assertArrayEquals(bytes, read)
+    }
+
+    @Test
+    fun failedDownloadFailsReader() {
+        OkNetTestServer.dispatch = {
+            MockResponse().setHeader("Cache-Control", "no-store")
+                .setBody(Buffer().write(ByteArray(64 * 1024)))
+                .throttleBody(8 * 1024, 50, TimeUnit.MILLISECONDS)
+                .setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY)
+        }
+        val id = UUID.randomUUID().toString()
+        useCase.downloadEnqueue(id, OkNetTestServer.url("/partial"), File.createTempFile("partial", ".bin"), callback)
+        val reader = useCase.openReader(id)
+        assertNotNull(reader)
+        try {
+            reader!!.use { it.readBytes() }
+            fail("the reader should fail with the download.")
+        } catch (expected: IOException) {
+        }
+    }
+}
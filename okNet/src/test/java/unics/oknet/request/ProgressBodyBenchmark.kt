@@ -0,0 +1,65 @@
+package unics.oknet.request
+
+import okhttp3.RequestBody
+import okhttp3.ResponseBody
+import okio.Buffer
+import okio.Okio
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import kotlin.system.measureNanoTime
+
+/**
+ * 进度包装的请求体/响应体与原始请求体/响应体的每字节开销对比；不参与默认的单元测试，通过`./gradlew :okNet:benchmark`运行
+ */
+class ProgressBodyBenchmark {
+
+    private val size = 32 * 1024 * 1024
+    private val data = ByteArray(size)
+
+    @Test
+    fun responseBody() {
+        var handled = 0L
+        val callback = DownloadPrgCallback { _, bytesHandled, _ -> handled = bytesHandled }
+        repeat(3) {
+            val rawBody = newResponseBody()
+            val raw = measureNanoTime { readAll(rawBody) }
+            val wrappedBody = ResponseProgressBody(newResponseBody(), callback)
+            val wrapped = measureNanoTime { readAll(wrappedBody) }
+            println("response raw=${perByte(raw)}ns/byte wrapped=${perByte(wrapped)}ns/byte")
+        }
+        //按实际读取的字节数统计
+        assertEquals(size.toLong(), handled)
+    }
+
+    @Test
+    fun requestBody() {
+        var handled = 0L
+        val callback = UploadPrgCallback { _, bytesHandled, _ -> handled = bytesHandled }
+        val body = RequestBody.create(null, data)
+        repeat(3) {
+            val raw = measureNanoTime { writeAll(body) }
+            val wrapped = measureNanoTime { writeAll(RequestProgressBody(body, callback)) }
+            println("request raw=${perByte(raw)}ns/byte wrapped=${perByte(wrapped)}ns/byte")
+        }
+        assertEquals(size.toLong(), handled)
+    }
+
+    private fun newResponseBody(): ResponseBody {
+        return ResponseBody.create(null, size.toLong(), Buffer().write(data))
+    }
+
+    private fun readAll(body: ResponseBody) {
+        body.source().use {
+            it.readAll(Okio.blackhole())
+        }
+    }
+
+    private fun writeAll(body: RequestBody) {
+        //写入Buffer时不统计进度，因此写入非Buffer的sink
+        Okio.buffer(Okio.blackhole()).use {
+            body.writeTo(it)
+        }
+    }
+
+    private fun perByte(nanos: Long): String = "%.3f".format(nanos.toDouble() / size)
+}
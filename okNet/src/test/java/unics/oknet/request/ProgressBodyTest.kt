@@ -0,0 +1,70 @@
+package unics.oknet.request
+
+import okhttp3.RequestBody
+import okhttp3.ResponseBody
+import okio.Buffer
+import okio.Okio
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import kotlin.random.Random
+
+/**
+ * 进度包装的请求体/响应体：按实际写入/读取的字节数统计，总数等于contentLength，重试时不重复累计
+ */
+class ProgressBodyTest {
+
+    private val data = Random.nextBytes(300 * 1024 + 123)
+
+    @Test
+    fun responseCountsExactBytes() {
+        var sum = 0L
+        var handled = 0L
+        var total = 0L
+        val body = ResponseProgressBody(ResponseBody.create(null, data.size.toLong(), Buffer().write(data))) { bytes, bytesHandled, contentLength ->
+            sum += bytes
+            handled = bytesHandled
+            total = contentLength
+        }
+        val source = body.source()
+        val read = Buffer()
+        //按较小的块读取，读取结束后继续读取不再统计
+        while (source.read(read, 1000) != -1L) {
+        }
+        source.read(read, 1000)
+        assertEquals(data.size.toLong(), sum)
+        assertEquals(data.size.toLong(), handled)
+        assertEquals(data.size.toLong(), total)
+        assertEquals(data.size.toLong(), read.size())
+    }
+
+    @Test
+    fun requestCountsEachAttemptOnce() {
+        var sum = 0L
+        var handled = 0L
+        val attempts = mutableListOf<Long>()
+        val body = RequestProgressBody(RequestBody.create(null, data)) { bytes, bytesHandled, contentLength ->
+            assertEquals(data.size.toLong(), contentLength)
+            sum += bytes
+            handled = bytesHandled
+        }
+        //模拟重试：同一个请求体写入两次，每次都从0开始统计
+        repeat(2) {
+            sum = 0
+            val target = Buffer()
+            Okio.buffer(target as okio.Sink).use { body.writeTo(it) }
+            attempts.add(handled)
+            assertEquals(data.size.toLong(), sum)
+            assertEquals(data.size.toLong(), target.size())
+        }
+        assertEquals(listOf(data.size.toLong(), data.size.toLong()), attempts)
+    }
+
+    @Test
+    fun bufferSinkIsNotCounted() {
+        var handled = 0L
+        val body = RequestProgressBody(RequestBody.create(null, data)) { _, bytesHandled, _ -> handled = bytesHandled }
+        //写入内存（比如日志拦截器读取请求体）不统计进度
+        body.writeTo(Buffer())
+        assertEquals(0L, handled)
+    }
+}
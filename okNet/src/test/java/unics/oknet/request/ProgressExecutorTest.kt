@@ -0,0 +1,74 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okio.Buffer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.util.Collections
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * 进度执行器：结束回调在执行器中、在最新的进度之后分发
+ */
+class ProgressExecutorTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+    private val dispatcher = Executors.newSingleThreadExecutor()
+
+    @After
+    fun tearDown() {
+        useCase.setProgressExecutor(null)
+        dispatcher.shutdown()
+    }
+
+    @Test
+    fun completeAfterLastProgress() {
+        val size = 512 * 1024L
+        OkNetTestServer.dispatch = {
+            MockResponse().setHeader("Cache-Control", "no-store").setBody(Buffer().write(ByteArray(size.toInt())))
+        }
+        //执行器繁忙，进度分发会积压
+        useCase.setProgressExecutor { command ->
+            dispatcher.execute {
+                Thread.sleep(20)
+                command.run()
+            }
+        }
+        val events: MutableList<String> = Collections.synchronizedList(mutableListOf())
+        val done = CountDownLatch(1)
+        var completeThread: Thread? = null
+        var dispatcherThread: Thread? = null
+        dispatcher.submit { dispatcherThread = Thread.currentThread() }.get()
+
+        val file = File.createTempFile("progress", ".bin")
+        useCase.downloadEnqueue(UUID.randomUUID().toString(), OkNetTestServer.url("/progress"), file, object : FileDownloadCallback {
+            override fun onProgressChanged(progress: ProgressInfo) {
+                events.add("progress:${progress.currentSize()}")
+            }
+
+            override fun onStart(url: String) {}
+
+            override fun onComplete(url: String, file: File) {
+                completeThread = Thread.currentThread()
+                events.add("complete")
+                done.countDown()
+            }
+
+            override fun onError(url: String, e: Throwable) {
+                events.add("error")
+                done.countDown()
+            }
+        })
+        assertTrue(done.await(10, TimeUnit.SECONDS))
+        assertEquals("complete", events.last())
+        assertEquals("progress:$size", events[events.size - 2])
+        assertEquals(dispatcherThread, completeThread)
+    }
+}
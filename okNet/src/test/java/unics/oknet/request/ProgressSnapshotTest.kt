@@ -0,0 +1,45 @@
+package unics.oknet.request
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * 进度快照：读取期间发生更新时重新读取，快照中的数据总是来自同一次更新
+ */
+class ProgressSnapshotTest {
+
+    @Test
+    fun snapshotIsConsistent() {
+        val info = ProgressInfo("snapshot", "url", SpeedEstimator.DEFAULT, true)
+        val running = AtomicBoolean(true)
+        //每次更新都满足：总大小 = 2 * 已完成大小
+        val writer = Thread {
+            var written = 1L
+            while (running.get()) {
+                info.update(written, written, written * 2)
+                written++
+            }
+        }
+        writer.start()
+        val snapshot = ProgressSnapshot()
+        var reads = 0
+        val deadline = System.currentTimeMillis() + 300
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                info.snapshot(snapshot)
+                if (snapshot.currentSize() > 0) {
+                    assertEquals(snapshot.currentSize() * 2, snapshot.totalSize())
+                    assertEquals(snapshot.currentSize(), snapshot.wireCurrentSize())
+                    assertEquals(snapshot.totalSize(), snapshot.wireTotalSize())
+                    reads++
+                }
+            }
+        } finally {
+            running.set(false)
+            writer.join()
+        }
+        assertTrue(reads > 0)
+    }
+}
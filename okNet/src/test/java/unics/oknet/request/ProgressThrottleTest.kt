@@ -0,0 +1,61 @@
+package unics.oknet.request
+
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * 进度节流的时间间隔、字节增量和百分比步长条件
+ */
+class ProgressThrottleTest {
+
+    @Test
+    fun interval() {
+        val state = ProgressThrottle.interval(100).newState()
+        assertTrue(state.tryPass(1000, 10, 1000))
+        assertFalse(state.tryPass(1050, 20, 1000))
+        assertTrue(state.tryPass(1100, 30, 1000))
+    }
+
+    @Test
+    fun bytes() {
+        val state = ProgressThrottle.bytes(100).newState()
+        assertTrue(state.tryPass(0, 100, 1000))
+        assertFalse(state.tryPass(0, 199, 1000))
+        assertTrue(state.tryPass(0, 200, 1000))
+    }
+
+    @Test
+    fun percent() {
+        val state = ProgressThrottle.percent(10).newState()
+        assertTrue(state.tryPass(0, 100, 1000))
+        assertFalse(state.tryPass(0, 150, 1000))
+        assertTrue(state.tryPass(0, 200, 1000))
+    }
+
+    @Test
+    fun percentIgnoredWhenTotalUnknown() {
+        val state = ProgressThrottle.percent(10).newState()
+        assertTrue(state.tryPass(0, 1, -1))
+        assertTrue(state.tryPass(0, 2, -1))
+    }
+
+    @Test
+    fun allConditionsRequired() {
+        val state = ProgressThrottle(100, 100, 0).newState()
+        assertTrue(state.tryPass(1000, 100, 1000))
+        //时间满足但字节增量不满足
+        assertFalse(state.tryPass(2000, 150, 1000))
+        //字节增量满足但时间不满足
+        assertFalse(state.tryPass(1050, 300, 1000))
+        assertTrue(state.tryPass(2000, 300, 1000))
+    }
+
+    @Test
+    fun completionAlwaysPasses() {
+        val state = ProgressThrottle(10000, 10000, 5).newState()
+        assertTrue(state.tryPass(20000, 10000, 100000))
+        assertFalse(state.tryPass(20001, 10001, 100000))
+        assertTrue(state.tryPass(20002, 100000, 100000))
+    }
+}
@@ -0,0 +1,117 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.Collections
+
+/**
+ * Range读取：校验服务端返回的Content-Range，顺序读取预取、LRU淘汰，服务端返回的数据不足时不会误判为文件末尾
+ */
+class RangeByteChannelTest {
+
+    private val content = ByteArray(1000) { it.toByte() }
+
+    //收到的Range请求
+    private val ranges: MutableList<String> = Collections.synchronizedList(mutableListOf())
+
+    /**
+     * @param shift    返回的起始位置相对请求位置的偏移，模拟实现错误的服务端
+     * @param maxBytes 每次最多返回的字节数，模拟返回的数据比请求的少
+     */
+    private fun serve(shift: Int, maxBytes: Int = Int.MAX_VALUE) {
+        OkNetTestServer.dispatch = {
+            val header = it.getHeader("Range")!!
+            ranges.add(header)
+            val range = header.removePrefix("bytes=").split("-")
+            val start = range[0].toInt() + shift
+            val end = minOf(range[1].toInt() + shift, content.size - 1, start + minOf(maxBytes, content.size) - 1)
+            MockResponse().setResponseCode(206)
+                .setHeader("Cache-Control", "no-store")
+                .setHeader("Content-Range", "bytes $start-$end/${content.size}")
+                .setBody(okio.Buffer().write(content, start, end - start + 1))
+        }
+    }
+
+    @Test
+    fun readsRequestedRange() {
+        serve(0)
+        RangeByteChannel(OkNetTestServer.url("/range"), 100, 4, 0).use { channel ->
+            val buffer = ByteBuffer.allocate(50)
+            channel.position(420)
+            assertEquals(50, channel.read(buffer))
+            assertEquals(420.toByte(), buffer.get(0))
+            assertEquals(1000, channel.size())
+        }
+    }
+
+    @Test
+    fun rejectsMismatchedRange() {
+        serve(10)
+        RangeByteChannel(OkNetTestServer.url("/range"), 100, 4, 0).use { channel ->
+            channel.position(200)
+            try {
+                channel.read(ByteBuffer.allocate(10))
+                fail("the mismatched range should be rejected.")
+            } catch (expected: IOException) {
+            }
+        }
+    }
+
+    private fun readAll(channel: RangeByteChannel, bufferSize: Int): ByteArray {
+        val out = ByteArrayOutputStream()
+        val buffer = ByteBuffer.allocate(bufferSize)
+        while (channel.read(buffer) != -1) {
+            buffer.flip()
+            out.write(buffer.array(), 0, buffer.limit())
+            buffer.clear()
+        }
+        return out.toByteArray()
+    }
+
+    @Test
+    fun sequentialReadPrefetches() {
+        serve(0)
+        RangeByteChannel(OkNetTestServer.url("/range"), 100, 8, 3).use { channel ->
+            assertArrayEquals(content, readAll(channel, 50))
+            //第一次读取只请求一块，之后每次请求当前块和预取的3块
+            assertEquals(listOf("bytes=0-99", "bytes=100-499", "bytes=500-899", "bytes=900-999"), ranges.toList())
+            assertEquals(content.size.toLong(), channel.bytesTransferred())
+        }
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsedBlocks() {
+        serve(0)
+        RangeByteChannel(OkNetTestServer.url("/range"), 100, 2, 0).use { channel ->
+            val buffer = ByteBuffer.allocate(10)
+            for (position in listOf(0L, 100L, 0L, 200L, 0L, 100L)) {
+                buffer.clear()
+                channel.position(position)
+                assertEquals(10, channel.read(buffer))
+                assertEquals(position.toByte(), buffer.get(0))
+            }
+            //缓存2块：读取块2时淘汰最久未使用的块1，块0仍在缓存中
+            assertEquals(listOf("bytes=0-99", "bytes=100-199", "bytes=200-299", "bytes=100-199"), ranges.toList())
+            assertEquals(400L, channel.bytesTransferred())
+        }
+    }
+
+    @Test
+    fun shortPartialResponseIsNotEof() {
+        //每次最多返回30字节，比块小
+        serve(0, maxBytes = 30)
+        RangeByteChannel(OkNetTestServer.url("/range"), 100, 4, 2).use { channel ->
+            assertArrayEquals(content, readAll(channel, 64))
+            //不足一块的剩余部分不缓存，会重新请求
+            assertTrue(channel.bytesTransferred() >= content.size)
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.util.Collections
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * 断点续传上传：失败后从服务端确认的位置继续，进程重启后通过上传记录继续，取消和偏移不前进时不会无限循环
+ */
+class ResumableUploadTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+
+    /**
+     * 按[ResumableUpload]约定实现的服务端
+     *
+     * @param fail 返回不为空时使用该响应代替正常处理，参数为已收到的PATCH数量
+     */
+    private class UploadServer(private val fail: (RecordedRequest, Int) -> MockResponse? = { _, _ -> null }) {
+        val received = ByteArrayOutputStream()
+        //收到的所有PATCH请求的Upload-Offset
+        val patchOffsets: MutableList<Long> = Collections.synchronizedList(mutableListOf())
+
+        fun dispatch(request: RecordedRequest): MockResponse = synchronized(this) {
+            when (request.method) {
+                "HEAD" -> MockResponse().setHeader(ResumableUpload.UPLOAD_OFFSET, received.size())
+                "PATCH" -> {
+                    val offset = request.getHeader(ResumableUpload.UPLOAD_OFFSET)!!.toLong()
+                    patchOffsets.add(offset)
+                    fail(request, patchOffsets.size)?.let { return it }
+                    if (offset != received.size().toLong())
+                        return MockResponse().setResponseCode(409)
+                    received.write(request.body.readByteArray())
+                    MockResponse().setHeader(ResumableUpload.UPLOAD_OFFSET, received.size()).setBody("done")
+                }
+                else -> MockResponse().setResponseCode(405)
+            }
+        }
+    }
+
+    private fun newFile(size: Int): File {
+        val file = File.createTempFile("upload", ".bin")
+        file.writeBytes(Random.nextBytes(size))
+        return file
+    }
+
+    @Test
+    fun resumesAfterFailure() {
+        val file = newFile(1000)
+        //第二个分片第一次上传失败
+        val server = UploadServer { _, count -> if (count == 2) MockResponse().setResponseCode(500) else null }
+        OkNetTestServer.dispatch = server::dispatch
+
+        val response = useCase.uploadResumable(UUID.randomUUID().toString(), OkNetTestServer.url("/upload"), file, 300, 1, null)
+        assertEquals("done", response)
+        assertArrayEquals(file.readBytes(), server.received.toByteArray())
+        assertEquals(listOf(0L, 300L, 300L, 600L, 900L), server.patchOffsets)
+    }
+
+    @Test
+    fun offsetQueryFailureIsRetried() {
+        val file = newFile(1000)
+        //第二个分片失败后，第一次查询进度也失败
+        val server = UploadServer { _, count -> if (count == 2) MockResponse().setResponseCode(500) else null }
+        var heads = 0
+        OkNetTestServer.dispatch = {
+            if (it.method == "HEAD" && ++heads == 2)
+                MockResponse().setResponseCode(503)
+            else
+                server.dispatch(it)
+        }
+
+        val response = useCase.uploadResumable(UUID.randomUUID().toString(), OkNetTestServer.url("/upload"), file, 300, 3, null)
+        assertEquals("done", response)
+        assertEquals(3, heads)
+        assertArrayEquals(file.readBytes(), server.received.toByteArray())
+    }
+
+    @Test
+    fun cancelDuringBackoff() {
+        val file = newFile(1000)
+        val id = UUID.randomUUID().toString()
+        val failed = CountDownLatch(1)
+        //所有分片都失败，上传在重试前等待
+        OkNetTestServer.dispatch = {
+            if (it.method == "PATCH")
+                failed.countDown()
+            MockResponse().setResponseCode(if (it.method == "HEAD") 200 else 500)
+        }
+        val error = CountDownLatch(1)
+        useCase.uploadResumableEnqueue(id, OkNetTestServer.url("/upload"), file, 300, 10, object : FileUploadCallback {
+            override fun onProgressChanged(progress: ProgressInfo) {}
+            override fun onStart(url: String) {}
+            override fun onComplete(url: String, response: String) {}
+            override fun onError(url: String, e: Throwable) = error.countDown()
+        })
+        assertTrue(failed.await(5, TimeUnit.SECONDS))
+        val start = System.currentTimeMillis()
+        assertTrue(useCase.cancel(id))
+        //取消立即结束等待，而不是等完所有重试
+        assertTrue(error.await(2, TimeUnit.SECONDS))
+        assertTrue(System.currentTimeMillis() - start < 2000)
+    }
+
+    @Test
+    fun resumesAfterRestart() {
+        val file = newFile(1000)
+        val id = UUID.randomUUID().toString()
+        //第三个分片失败且不重试，模拟上传过程中进程退出
+        val server = UploadServer { _, count -> if (count == 3) MockResponse().setResponseCode(500) else null }
+        OkNetTestServer.dispatch = server::dispatch
+        try {
+            useCase.uploadResumable(id, OkNetTestServer.url("/upload"), file, 300, 0, null)
+            fail("the upload should fail.")
+        } catch (expected: Exception) {
+        }
+        assertTrue(ResumableUpload.recordFile(id).exists())
+
+        //新的上传使用持久化的上传记录，从服务端确认的位置继续
+        val resumed = UploadServer()
+        resumed.received.write(server.received.toByteArray())
+        OkNetTestServer.dispatch = resumed::dispatch
+        assertEquals("done", useCase.uploadResumable(id, OkNetTestServer.url("/upload"), file, 300, 0, null))
+        assertArrayEquals(file.readBytes(), resumed.received.toByteArray())
+        assertEquals(listOf(600L, 900L), resumed.patchOffsets)
+        assertFalse(ResumableUpload.recordFile(id).exists())
+    }
+
+    @Test
+    fun offsetNotAdvancingCountsAsRetry() {
+        val file = newFile(1000)
+        //服务端成功响应，但确认的字节数始终为0
+        OkNetTestServer.dispatch = { MockResponse().setHeader(ResumableUpload.UPLOAD_OFFSET, 0) }
+        try {
+            useCase.uploadResumable(UUID.randomUUID().toString(), OkNetTestServer.url("/upload"), file, 300, 2, null)
+            fail("the upload should fail.")
+        } catch (expected: IOException) {
+        }
+    }
+
+    @Test
+    fun cancelBeforeFirstChunk() {
+        val file = newFile(1000)
+        val id = UUID.randomUUID().toString()
+        val queried = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val server = UploadServer()
+        OkNetTestServer.dispatch = {
+            if (it.method == "HEAD") {
+                queried.countDown()
+                release.await(5, TimeUnit.SECONDS)
+            }
+            server.dispatch(it)
+        }
+        val error = CountDownLatch(1)
+        useCase.uploadResumableEnqueue(id, OkNetTestServer.url("/upload"), file, 300, 3, object : FileUploadCallback {
+            override fun onProgressChanged(progress: ProgressInfo) {}
+            override fun onStart(url: String) {}
+            override fun onComplete(url: String, response: String) {}
+            override fun onError(url: String, e: Throwable) = error.countDown()
+        })
+        assertTrue(queried.await(5, TimeUnit.SECONDS))
+        assertTrue(useCase.cancel(id))
+        release.countDown()
+        assertTrue(error.await(5, TimeUnit.SECONDS))
+        assertTrue(server.patchOffsets.isEmpty())
+    }
+
+    @Test
+    fun rejectsDuplicateId() {
+        val file = newFile(1000)
+        val id = UUID.randomUUID().toString()
+        val queried = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val server = UploadServer()
+        OkNetTestServer.dispatch = {
+            if (it.method == "HEAD") {
+                queried.countDown()
+                release.await(5, TimeUnit.SECONDS)
+            }
+            server.dispatch(it)
+        }
+        val done = CountDownLatch(1)
+        useCase.uploadResumableEnqueue(id, OkNetTestServer.url("/upload"), file, 300, 3, object : FileUploadCallback {
+            override fun onProgressChanged(progress: ProgressInfo) {}
+            override fun onStart(url: String) {}
+            override fun onComplete(url: String, response: String) = done.countDown()
+            override fun onError(url: String, e: Throwable) {}
+        })
+        assertTrue(queried.await(5, TimeUnit.SECONDS))
+        try {
+            useCase.uploadResumable(id, OkNetTestServer.url("/upload"), file, 300, 3, null)
+            fail("the duplicate upload should be rejected.")
+        } catch (expected: IllegalStateException) {
+        }
+        //被拒绝的调用不能移除正在执行的任务
+        assertTrue(useCase.isRunning(id))
+        release.countDown()
+        assertTrue(done.await(5, TimeUnit.SECONDS))
+        assertArrayEquals(file.readBytes(), server.received.toByteArray())
+    }
+}
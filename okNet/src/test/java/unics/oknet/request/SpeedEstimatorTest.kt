@@ -0,0 +1,83 @@
+package unics.oknet.request
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * 速度估算：使用固定的时间戳验证指数加权移动平均和滑动时间窗口
+ */
+class SpeedEstimatorTest {
+
+    @Test
+    fun ewmaFirstSampleIsRate() {
+        val state = SpeedEstimator.ewma(1000).newState(0)
+        assertEquals(1000L, state.update(1000, 1000))
+    }
+
+    @Test
+    fun ewmaWeightsByInterval() {
+        val state = SpeedEstimator.ewma(1000).newState(0)
+        state.update(1000, 1000)
+        //间隔等于半衰期，新旧速度各占一半
+        assertEquals(2000L, state.update(2000, 3000))
+        //间隔为两倍半衰期，旧速度的权重为1/4
+        assertEquals(1250L, state.update(4000, 2000))
+    }
+
+    @Test
+    fun ewmaSameMillisecondIsDeferred() {
+        val state = SpeedEstimator.ewma(1000).newState(0)
+        //还没有速度时返回0，而不是负数
+        assertEquals(0L, state.update(0, 100))
+        assertEquals(1100L, state.update(1000, 1000))
+        //同一毫秒内的更新返回上次的速度，字节数累积到下一次计算
+        assertEquals(1100L, state.update(1000, 500))
+        assertEquals(1100L, state.update(1000, 500))
+        //(500 + 500 + 1100) / 1秒 = 2100，与1100各占一半
+        assertEquals(1600L, state.update(2000, 1100))
+    }
+
+    @Test
+    fun windowConstantRate() {
+        val state = SpeedEstimator.window(1000).newState(0)
+        var speed = 0L
+        for (time in 100L..3000L step 100) {
+            speed = state.update(time, 100)
+        }
+        assertEquals(1000L, speed)
+    }
+
+    @Test
+    fun windowSameMillisecondMergesSample() {
+        val state = SpeedEstimator.window(1000).newState(0)
+        //与开始时间相同：没有间隔，字节数计入开始样本
+        assertEquals(0L, state.update(0, 100))
+        assertEquals(500L, state.update(200, 100))
+        //同一毫秒的更新合并到同一个样本
+        assertEquals(1000L, state.update(200, 100))
+    }
+
+    @Test
+    fun windowKeepsBaselineSample() {
+        val state = SpeedEstimator.window(1000).newState(0)
+        state.update(500, 500)
+        //窗口为[600, 1600]：移除0处的样本，保留窗口开始前的最后一个样本500作为基准
+        assertEquals(1000L, state.update(1600, 1100))
+        //基准仍为500：(1100 + 1000) / 1.2秒
+        assertEquals(1750L, state.update(1700, 1000))
+        //窗口为[2700, 3700]，只剩一个更早的样本1700时仍以其为基准
+        assertEquals(500L, state.update(3700, 1000))
+    }
+
+    @Test
+    fun windowWrapsAroundMaxSamples() {
+        //窗口足够大，样本数量超过上限后丢弃最早的样本
+        val state = SpeedEstimator.window(100_000).newState(0)
+        var speed = 0L
+        for (time in 1L..200L) {
+            speed = state.update(time, if (time > 150) 3 else 1)
+        }
+        //最多保存64个样本：基准为第137毫秒的样本，之后13毫秒每毫秒1字节、50毫秒每毫秒3字节
+        assertEquals(((13 + 150) * 1000.0 / 63).toLong(), speed)
+    }
+}
@@ -0,0 +1,78 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okio.Buffer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 全局传输统计：累计字节数和进行中的任务数量
+ */
+class TransferMeterTest {
+
+    @Test
+    fun counters() {
+        val meter = TransferMeter()
+        meter.onTransferred(false, 100)
+        meter.onTransferred(false, 0)
+        meter.onTransferred(true, 30)
+        meter.onTransferred(true, -1)
+        assertEquals(100L, meter.downloadedBytes())
+        assertEquals(30L, meter.uploadedBytes())
+
+        meter.onTaskStarted(false)
+        meter.onTaskStarted(false)
+        meter.onTaskStarted(true)
+        assertEquals(2, meter.activeDownloads())
+        assertEquals(1, meter.activeUploads())
+        meter.onTaskFinished(false)
+        meter.onTaskFinished(true)
+        assertEquals(1, meter.activeDownloads())
+        assertEquals(0, meter.activeUploads())
+    }
+
+    @Test
+    fun countsDownloadTask() {
+        val size = 256 * 1024
+        val release = CountDownLatch(1)
+        OkNetTestServer.dispatch = {
+            release.await(10, TimeUnit.SECONDS)
+            MockResponse().setHeader("Cache-Control", "no-store").setBody(Buffer().write(ByteArray(size)))
+        }
+        val useCase = OkNetUseCase.getInstance()
+        val meter = useCase.transferMeter
+        val bytesBefore = meter.downloadedBytes()
+        val activeBefore = meter.activeDownloads()
+
+        val done = CountDownLatch(1)
+        useCase.downloadEnqueue(UUID.randomUUID().toString(), OkNetTestServer.url("/meter"), File.createTempFile("meter", ".bin"), object : FileDownloadCallback {
+            override fun onProgressChanged(progress: ProgressInfo) {}
+
+            override fun onStart(url: String) {}
+
+            override fun onComplete(url: String, file: File) {
+                done.countDown()
+            }
+
+            override fun onError(url: String, e: Throwable) {
+                done.countDown()
+            }
+        })
+        //任务开始后、完成前计入进行中的任务
+        assertEquals(activeBefore + 1, meter.activeDownloads())
+        release.countDown()
+        assertTrue(done.await(10, TimeUnit.SECONDS))
+        //完成回调之后才移除任务
+        val deadline = System.currentTimeMillis() + 5000
+        while (meter.activeDownloads() != activeBefore && System.currentTimeMillis() < deadline)
+            Thread.sleep(10)
+        assertEquals(activeBefore, meter.activeDownloads())
+        assertEquals(bytesBefore + size, meter.downloadedBytes())
+    }
+}
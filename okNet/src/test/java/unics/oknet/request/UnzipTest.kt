@@ -0,0 +1,40 @@
+package unics.oknet.request
+
+import okhttp3.mockwebserver.MockResponse
+import okio.Buffer
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import unics.oknet.OkNetTestServer
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.file.Files
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * 边下载边解压：条目之后的中央目录也需要读取完，进度才能到达100%
+ */
+class UnzipTest {
+
+    @Test
+    fun progressReachesTotal() {
+        val bytes = ByteArrayOutputStream()
+        ZipOutputStream(bytes).use { zip ->
+            for (i in 0 until 500) {
+                zip.putNextEntry(ZipEntry("dir/file$i.txt"))
+                zip.write("content $i".toByteArray())
+                zip.closeEntry()
+            }
+        }
+        OkNetTestServer.dispatch = {
+            MockResponse().setHeader("Cache-Control", "no-store").setBody(Buffer().write(bytes.toByteArray()))
+        }
+        var last: ProgressInfo? = null
+        val dir = Files.createTempDirectory("unzip").toFile()
+        OkNetUseCase.getInstance().unzip(OkNetTestServer.url("/unzip"), dir) { last = it }
+
+        assertEquals("content 7", File(dir, "dir/file7.txt").readText())
+        assertEquals(bytes.size().toLong(), last!!.totalSize())
+        assertEquals(last!!.totalSize(), last!!.currentSize())
+    }
+}
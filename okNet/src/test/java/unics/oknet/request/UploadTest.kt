@@ -0,0 +1,190 @@
+package unics.oknet.request
+
+import okhttp3.MediaType
+import okhttp3.RequestBody
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import retrofit2.HttpException
+import unics.oknet.OkNet
+import unics.oknet.OkNetTestServer
+import java.io.File
+import java.io.IOException
+import java.util.Collections
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * 上传：同步上传和入队上传的成功、失败和取消
+ */
+class UploadTest {
+
+    private val useCase = OkNetUseCase.getInstance()
+    private val requests: MutableList<RecordedRequest> = Collections.synchronizedList(mutableListOf())
+
+    private fun respond(response: () -> MockResponse) {
+        OkNetTestServer.dispatch = {
+            requests.add(it)
+            response().setHeader("Cache-Control", "no-store")
+        }
+    }
+
+    private fun newFile(): File {
+        val file = File.createTempFile("upload", ".bin")
+        file.writeBytes(Random.nextBytes(200 * 1024))
+        return file
+    }
+
+    private class Recorder : FileUploadCallback {
+        val done = CountDownLatch(1)
+        val started = CountDownLatch(1)
+
+        @Volatile
+        var progress: ProgressInfo? = null
+
+        @Volatile
+        var response: String? = null
+
+        @Volatile
+        var error: Throwable? = null
+
+        override fun onProgressChanged(progress: ProgressInfo) {
+            this.progress = progress
+        }
+
+        override fun onStart(url: String) {
+            started.countDown()
+        }
+
+        override fun onComplete(url: String, response: String) {
+            this.response = response
+            done.countDown()
+        }
+
+        override fun onError(url: String, e: Throwable) {
+            error = e
+            done.countDown()
+        }
+    }
+
+    @Test
+    fun serviceUpload() {
+        respond { MockResponse().setBody("done") }
+        val data = Random.nextBytes(1024)
+        val response = OkNet.createApiService(CommonService::class.java, true)
+            .upload(OkNetTestServer.url("/service"), RequestBody.create(MediaType.parse("application/octet-stream"), data))
+            .execute()
+        assertEquals("done", response.body()!!.string())
+        val request = requests.single()
+        assertEquals("POST", request.method)
+        assertArrayEquals(data, request.body.readByteArray())
+    }
+
+    @Test
+    fun uploadReturnsResponse() {
+        respond { MockResponse().setBody("done") }
+        val file = newFile()
+        var last: ProgressInfo? = null
+        assertEquals("done", useCase.upload(OkNetTestServer.url("/upload"), file) { last = it })
+        assertArrayEquals(file.readBytes(), requests.single().body.readByteArray())
+        assertEquals(file.length(), last!!.currentSize())
+        assertEquals(file.length(), last!!.totalSize())
+    }
+
+    @Test
+    fun uploadThrowsOnHttpError() {
+        respond { MockResponse().setResponseCode(500) }
+        try {
+            useCase.upload(OkNetTestServer.url("/upload"), newFile(), null)
+            fail()
+        } catch (e: HttpException) {
+            assertEquals(500, e.code())
+        }
+    }
+
+    @Test
+    fun uploadEnqueueCompletes() {
+        respond { MockResponse().setBody("done") }
+        val id = UUID.randomUUID().toString()
+        val file = newFile()
+        val recorder = Recorder()
+        useCase.uploadEnqueue(id, OkNetTestServer.url("/enqueue"), file, recorder)
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS))
+        assertEquals(0, recorder.started.count)
+        assertEquals("done", recorder.response)
+        assertEquals(file.length(), recorder.progress!!.currentSize())
+        assertArrayEquals(file.readBytes(), requests.single().body.readByteArray())
+        //完成回调之后才移除任务
+        val deadline = System.currentTimeMillis() + 5000
+        while (useCase.isRunning(id) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10)
+        assertFalse(useCase.isRunning(id))
+    }
+
+    @Test
+    fun uploadEnqueueReportsHttpError() {
+        respond { MockResponse().setResponseCode(500) }
+        val recorder = Recorder()
+        useCase.uploadEnqueue(UUID.randomUUID().toString(), OkNetTestServer.url("/enqueue"), newFile(), recorder)
+        assertTrue(recorder.done.await(10, TimeUnit.SECONDS))
+        assertEquals(500, (recorder.error as HttpException).code())
+    }
+
+    @Test
+    fun sameIdRunsOnce() {
+        val release = CountDownLatch(1)
+        respond {
+            release.await(10, TimeUnit.SECONDS)
+            MockResponse().setBody("done")
+        }
+        val id = UUID.randomUUID().toString()
+        val file = newFile()
+        val first = Recorder()
+        val second = Recorder()
+        useCase.uploadEnqueue(id, OkNetTestServer.url("/once"), file, first)
+        //任务进行中再次入队只添加回调
+        useCase.uploadEnqueue(id, OkNetTestServer.url("/once"), file, second)
+        release.countDown()
+        assertTrue(first.done.await(10, TimeUnit.SECONDS))
+        assertTrue(second.done.await(10, TimeUnit.SECONDS))
+        assertEquals("done", first.response)
+        assertEquals("done", second.response)
+        assertEquals(1, requests.size)
+    }
+
+    @Test
+    fun cancelEnqueued() {
+        val arrived = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        respond {
+            arrived.countDown()
+            release.await(10, TimeUnit.SECONDS)
+            MockResponse().setBody("done")
+        }
+        val id = UUID.randomUUID().toString()
+        val recorder = Recorder()
+        try {
+            useCase.uploadEnqueue(id, OkNetTestServer.url("/cancel"), newFile(), recorder)
+            assertTrue(arrived.await(10, TimeUnit.SECONDS))
+            assertTrue(useCase.cancel(id))
+            //取消后以IOException结束，不等待服务端响应
+            assertTrue(recorder.done.await(5, TimeUnit.SECONDS))
+            assertTrue(recorder.error is IOException)
+            assertNull(recorder.response)
+        } finally {
+            release.countDown()
+        }
+        val deadline = System.currentTimeMillis() + 5000
+        while (useCase.isRunning(id) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10)
+        assertFalse(useCase.cancel(id))
+    }
+}
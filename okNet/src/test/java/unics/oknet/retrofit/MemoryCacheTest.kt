@@ -0,0 +1,171 @@
+package unics.oknet.retrofit
+
+import okhttp3.OkHttpClient
+import okhttp3.ResponseBody
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import retrofit2.Call
+import retrofit2.Callback
+import retrofit2.Converter
+import retrofit2.Response
+import retrofit2.Retrofit
+import retrofit2.http.GET
+import retrofit2.http.Query
+import java.lang.reflect.Type
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 内存缓存：按参数和请求url区分、有效期、最近最少使用淘汰，异步命中通过回调执行器回调
+ */
+class MemoryCacheTest {
+
+    interface Service {
+        @MemoryCache(ttlSeconds = 60)
+        @GET("item")
+        fun item(@Query("id") id: Int): Call<String>
+
+        @MemoryCache(ttlSeconds = 1)
+        @GET("short")
+        fun short(): Call<String>
+    }
+
+    /**
+     * 响应内容直接转换为字符串
+     */
+    private object StringConverterFactory : Converter.Factory() {
+        override fun responseBodyConverter(type: Type, annotations: Array<Annotation>, retrofit: Retrofit): Converter<ResponseBody, *>? {
+            return if (type == String::class.java) Converter<ResponseBody, String> { it.string() } else null
+        }
+    }
+
+    private val requests = AtomicInteger()
+
+    private val server = MockWebServer().apply {
+        setDispatcher(object : Dispatcher() {
+            override fun dispatch(request: RecordedRequest): MockResponse {
+                return MockResponse().setBody("${request.path}#${requests.incrementAndGet()}")
+            }
+        })
+        start()
+    }
+
+    private val callbackExecutor = Executors.newSingleThreadExecutor()
+
+    private fun service(maxSize: Int = 64): Service {
+        return service(MemoryCacheCallAdapterFactory(maxSize), "/")
+    }
+
+    private fun service(factory: MemoryCacheCallAdapterFactory, path: String): Service {
+        return Retrofit.Builder()
+            .baseUrl(server.url(path))
+            .client(OkHttpClient())
+            .callbackExecutor(callbackExecutor)
+            .addCallAdapterFactory(factory)
+            .addConverterFactory(StringConverterFactory)
+            .build()
+            .create(Service::class.java)
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+        callbackExecutor.shutdown()
+    }
+
+    @Test
+    fun keyedByArguments() {
+        val service = service()
+        val first = service.item(1).execute().body()
+        assertEquals(first, service.item(1).execute().body())
+        assertEquals(1, requests.get())
+        val second = service.item(2).execute().body()
+        assertEquals(2, requests.get())
+        assertTrue(first != second)
+    }
+
+    @Test
+    fun sharedFactoryKeyedByUrl() {
+        //同一个Factory用于baseUrl不同的Retrofit，方法和参数相同时按url区分
+        val factory = MemoryCacheCallAdapterFactory()
+        val first = service(factory, "/a/")
+        val second = service(factory, "/b/")
+        assertEquals("/a/item?id=1#1", first.item(1).execute().body())
+        assertEquals("/b/item?id=1#2", second.item(1).execute().body())
+        assertEquals("/a/item?id=1#1", first.item(1).execute().body())
+        assertEquals(2, requests.get())
+
+        factory.clear()
+        assertEquals("/a/item?id=1#3", first.item(1).execute().body())
+    }
+
+    @Test
+    fun hitsShareInstance() {
+        val service = service()
+        //有效期内所有调用方得到同一个结果对象
+        assertSame(service.item(1).execute().body(), service.item(1).execute().body())
+    }
+
+    @Test
+    fun expiresAfterTtl() {
+        val service = service()
+        val first = service.short().execute().body()
+        assertEquals(first, service.short().execute().body())
+        Thread.sleep(1100)
+        assertTrue(first != service.short().execute().body())
+        assertEquals(2, requests.get())
+    }
+
+    @Test
+    fun evictsLeastRecentlyUsed() {
+        val service = service(maxSize = 2)
+        service.item(1).execute()
+        service.item(2).execute()
+        //访问1后，2成为最近最少使用的缓存
+        service.item(1).execute()
+        service.item(3).execute()
+        assertEquals(3, requests.get())
+
+        service.item(1).execute()
+        assertEquals(3, requests.get())
+        service.item(2).execute()
+        assertEquals(4, requests.get())
+    }
+
+    @Test
+    fun asyncHitUsesCallbackExecutor() {
+        val service = service()
+        service.item(1).execute()
+        val executorThread = callbackExecutor.submit<Thread> { Thread.currentThread() }.get()
+
+        val latch = CountDownLatch(1)
+        var callbackThread: Thread? = null
+        var body: String? = null
+        service.item(1).enqueue(object : Callback<String> {
+            override fun onResponse(call: Call<String>, response: Response<String>) {
+                callbackThread = Thread.currentThread()
+                body = response.body()
+                latch.countDown()
+            }
+
+            override fun onFailure(call: Call<String>, t: Throwable) {
+                latch.countDown()
+            }
+        })
+        assertTrue(latch.await(5, TimeUnit.SECONDS))
+        assertEquals(1, requests.get())
+        assertEquals("/item?id=1#1", body)
+        assertSame(executorThread, callbackThread)
+        assertNotSame(Thread.currentThread(), callbackThread)
+    }
+}